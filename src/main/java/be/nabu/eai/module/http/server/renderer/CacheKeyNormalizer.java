@@ -0,0 +1,163 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Calculates the cache key for a url, urls that point to the same page should end up with the same key.
+ * Tracking parameters are removed, the remaining query parameters are sorted, the host is lowercased and mapped to its canonical name and default ports are dropped.
+ * Trailing slashes are only removed when asked for, some sites serve different pages for /a and /a/.
+ */
+public class CacheKeyNormalizer {
+
+	// parameters that are added by marketing tools and social networks, they don't change the page
+	private static List<String> defaultParameters = Arrays.asList(new String [] {
+		"utm_.*",
+		"fbclid",
+		"gclid",
+		"dclid",
+		"msclkid",
+		"yclid",
+		"igshid",
+		"mc_cid",
+		"mc_eid",
+		"_ga",
+		"_gl"
+	});
+
+	private Pattern ignoredParameters;
+	// maps host aliases to the canonical host
+	private Map<String, String> hosts = new HashMap<String, String>();
+	private boolean keepQueryOrder, removeTrailingSlash;
+
+	public CacheKeyNormalizer(List<String> parameters) {
+		List<String> all = new ArrayList<String>(defaultParameters);
+		if (parameters != null) {
+			for (String parameter : parameters) {
+				if (parameter != null && !parameter.trim().isEmpty()) {
+					all.add(parameter.trim());
+				}
+			}
+		}
+		StringBuilder builder = new StringBuilder();
+		for (String parameter : all) {
+			if (builder.length() > 0) {
+				builder.append("|");
+			}
+			builder.append("(?:").append(parameter).append(")");
+		}
+		ignoredParameters = Pattern.compile(builder.toString(), Pattern.CASE_INSENSITIVE);
+	}
+
+	public void addAlias(String alias, String host) {
+		if (alias != null && host != null) {
+			hosts.put(alias.toLowerCase(), host.toLowerCase());
+		}
+	}
+
+	public String normalize(URI uri) {
+		StringBuilder builder = new StringBuilder();
+		String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase();
+		builder.append(scheme).append("://");
+		if (uri.getHost() != null) {
+			String host = uri.getHost().toLowerCase();
+			builder.append(hosts.containsKey(host) ? hosts.get(host) : host);
+		}
+		if (uri.getPort() >= 0 && !(uri.getPort() == 80 && scheme.equals("http")) && !(uri.getPort() == 443 && scheme.equals("https"))) {
+			builder.append(":").append(uri.getPort());
+		}
+		String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+		if (removeTrailingSlash) {
+			while (path.length() > 1 && path.endsWith("/")) {
+				path = path.substring(0, path.length() - 1);
+			}
+		}
+		builder.append(path);
+		String query = normalizeQuery(uri.getRawQuery());
+		if (!query.isEmpty()) {
+			builder.append("?").append(query);
+		}
+		// the fragment is never sent to the server so it can not influence the page
+		return builder.toString();
+	}
+
+	private String normalizeQuery(String query) {
+		if (query == null || query.isEmpty()) {
+			return "";
+		}
+		List<String> parameters = new ArrayList<String>();
+		for (String parameter : query.split("&")) {
+			if (parameter.isEmpty()) {
+				continue;
+			}
+			int index = parameter.indexOf('=');
+			String name = index < 0 ? parameter : parameter.substring(0, index);
+			if (!ignoredParameters.matcher(name).matches()) {
+				parameters.add(parameter);
+			}
+		}
+		// the sort is stable so repeated parameters keep their order
+		if (!keepQueryOrder) {
+			Collections.sort(parameters, new Comparator<String>() {
+				@Override
+				public int compare(String first, String second) {
+					return getName(first).compareTo(getName(second));
+				}
+			});
+		}
+		StringBuilder builder = new StringBuilder();
+		for (String parameter : parameters) {
+			if (builder.length() > 0) {
+				builder.append("&");
+			}
+			builder.append(parameter);
+		}
+		return builder.toString();
+	}
+
+	private static String getName(String parameter) {
+		int index = parameter.indexOf('=');
+		return index < 0 ? parameter : parameter.substring(0, index);
+	}
+
+	public boolean isKeepQueryOrder() {
+		return keepQueryOrder;
+	}
+
+	public void setKeepQueryOrder(boolean keepQueryOrder) {
+		this.keepQueryOrder = keepQueryOrder;
+	}
+
+	public boolean isRemoveTrailingSlash() {
+		return removeTrailingSlash;
+	}
+
+	public void setRemoveTrailingSlash(boolean removeTrailingSlash) {
+		this.removeTrailingSlash = removeTrailingSlash;
+	}
+}
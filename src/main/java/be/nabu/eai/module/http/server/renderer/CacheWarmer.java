@@ -0,0 +1,275 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import be.nabu.libs.cache.api.Cache;
+import be.nabu.libs.cache.api.ExplorableCache;
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.core.DefaultHTTPRequest;
+import be.nabu.utils.mime.impl.MimeHeader;
+import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * Renders a list of pages (e.g. from a sitemap) into the cache, the renders themselves go through the scheduler of the renderer, the warmer only limits how many it has in flight.
+ * Pages that are already cached are skipped, pages we did not get to within the time budget are skipped as well.
+ */
+public class CacheWarmer {
+
+	private static Logger logger = LoggerFactory.getLogger(CacheWarmer.class);
+	// sitemap indexes can point to other sitemaps, we don't follow them indefinitely
+	private static final int MAX_SITEMAPS = 50;
+
+	private Renderer renderer;
+	private Cache cache;
+	private String host;
+	private int concurrency = 2;
+	// the maximum time (in ms) the warmup can take
+	private Long timeout;
+	private WarmupStatus status = new WarmupStatus();
+	private volatile ExecutorService executor;
+	private volatile boolean stopped;
+
+	public CacheWarmer(Renderer renderer, Cache cache, String host) {
+		this.renderer = renderer;
+		this.cache = cache;
+		this.host = host == null ? "localhost" : host;
+	}
+
+	/**
+	 * Adds all the pages in the sitemap (and any sitemaps it refers to) to the paths
+	 */
+	public List<String> getPaths(List<String> paths, String sitemap) {
+		Set<String> result = new LinkedHashSet<String>(paths);
+		if (sitemap != null) {
+			List<String> sitemaps = new ArrayList<String>();
+			sitemaps.add(sitemap);
+			for (int i = 0; i < sitemaps.size() && i < MAX_SITEMAPS; i++) {
+				try {
+					readSitemap(sitemaps.get(i), result, sitemaps);
+				}
+				catch (Exception e) {
+					logger.warn("Could not read sitemap: " + sitemaps.get(i), e);
+				}
+			}
+		}
+		return new ArrayList<String>(result);
+	}
+
+	private void readSitemap(String path, Set<String> paths, List<String> sitemaps) throws Exception {
+		URL url = new URL((renderer.isSecure() ? "https" : "http") + "://" + host + getPath(path));
+		WebResponse response = renderer.newConnection(null, null, false).getResponse(new WebRequest(url));
+		if (response.getStatusCode() != 200) {
+			logger.warn("Could not read sitemap " + url + ": " + response.getStatusCode());
+			return;
+		}
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		// sitemaps don't need a doctype, we don't want to resolve any external entities
+		factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+		Document document;
+		InputStream input = response.getContentAsStream();
+		try {
+			document = factory.newDocumentBuilder().parse(input);
+		}
+		finally {
+			input.close();
+		}
+		boolean index = "sitemapindex".equals(document.getDocumentElement().getLocalName());
+		NodeList locations = document.getElementsByTagNameNS("*", "loc");
+		for (int i = 0; i < locations.getLength(); i++) {
+			String location = locations.item(i).getTextContent();
+			if (location != null && !location.trim().isEmpty()) {
+				if (index) {
+					sitemaps.add(location.trim());
+				}
+				else {
+					paths.add(getPath(location.trim()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Warms up the paths and the pages in the sitemap (if any) in all the languages, this blocks until all the pages are done or the time budget is spent
+	 */
+	public WarmupStatus warmup(List<String> paths, String sitemap, List<String> languages) {
+		paths = getPaths(paths, sitemap);
+		logger.info("Warming up " + paths.size() + " pages in " + languages.size() + " language(s)...");
+		return warmup(paths, languages);
+	}
+	
+	/**
+	 * Warms up all the paths in all the languages, this blocks until all the pages are done or the time budget is spent
+	 */
+	public WarmupStatus warmup(List<String> paths, List<String> languages) {
+		final long deadline = timeout == null ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+		status.start(paths.size() * languages.size());
+		executor = Executors.newFixedThreadPool(Math.max(1, concurrency), new ThreadFactory() {
+			private AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "renderer-warmup-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (final String language : languages) {
+			for (final String path : paths) {
+				executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						if (stopped || System.currentTimeMillis() > deadline) {
+							status.skipped();
+						}
+						else {
+							warmup(path, language);
+						}
+					}
+				});
+			}
+		}
+		executor.shutdown();
+		boolean timedOut = false;
+		try {
+			long remaining = deadline - System.currentTimeMillis();
+			if (!executor.awaitTermination(remaining <= 0 ? 0 : remaining, TimeUnit.MILLISECONDS)) {
+				timedOut = true;
+				// the pages that are being rendered are allowed to finish, the rest is skipped
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+		}
+		status.stop(timedOut || System.currentTimeMillis() > deadline);
+		logger.info("Warmed up " + status.getRendered() + " pages (" + status.getSkipped() + " skipped, " + status.getFailed() + " failed) at " + String.format("%.2f", status.getThroughput()) + " pages/s");
+		return status;
+	}
+
+	/**
+	 * Warms up in a background thread so we don't block the caller
+	 */
+	public void start(final List<String> paths, final String sitemap, final List<String> languages) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					warmup(paths, sitemap, languages);
+				}
+				catch (Exception e) {
+					logger.error("Warmup failed", e);
+				}
+			}
+		}, "renderer-warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		stopped = true;
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private void warmup(String path, String language) {
+		try {
+			HTTPRequest request = newRequest(host, path, language);
+			if (cache == null) {
+				renderer.renderAsBytes(request, null, null, true, false);
+				status.rendered();
+				return;
+			}
+			// store the result under the same key a bot request for that language would use
+			String key = renderer.getCacheKey(request);
+			if (cache instanceof ExplorableCache ? ((ExplorableCache) cache).getEntry(key) != null : cache.get(key) != null) {
+				status.skipped();
+			}
+			else {
+				renderer.renderInBackground(key, request, true);
+				status.rendered();
+			}
+		}
+		catch (Exception e) {
+			logger.warn("Could not warm up: " + path + (language == null ? "" : " (" + language + ")"), e);
+			status.failed(path, e);
+		}
+	}
+
+	static HTTPRequest newRequest(String host, String path, String language) {
+		PlainMimeEmptyPart content = new PlainMimeEmptyPart(null, 
+			new MimeHeader("Content-Length", "0"),
+			new MimeHeader("Host", host));
+		if (language != null) {
+			content.setHeader(new MimeHeader("Cookie", "language=" + language));
+		}
+		return new DefaultHTTPRequest("GET", path, content);
+	}
+
+	// absolute urls (e.g. in a sitemap) are reduced to the path, we always render on our own host
+	static String getPath(String url) {
+		URI uri = URI.create(url);
+		String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+		return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+	}
+
+	public WarmupStatus getStatus() {
+		return status;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	public Long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(Long timeout) {
+		this.timeout = timeout;
+	}
+}
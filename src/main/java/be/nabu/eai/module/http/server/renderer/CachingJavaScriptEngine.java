@@ -0,0 +1,69 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
+
+/**
+ * Looks up external scripts in a shared {@link ScriptCache} before compiling them
+ */
+public class CachingJavaScriptEngine extends JavaScriptEngine {
+
+	private static final long serialVersionUID = 1L;
+	
+	private transient ScriptCache cache;
+	// the compile time (in ms) we saved since the last reset
+	private long savedCompileTime;
+
+	public CachingJavaScriptEngine(WebClient webClient, ScriptCache cache) {
+		super(webClient);
+		this.cache = cache;
+	}
+
+	@Override
+	public Script compile(HtmlPage owningPage, String sourceCode, String sourceName, int startLine) {
+		// inline scripts don't have a url as source name, they are usually small and often dynamic
+		if (cache == null || sourceCode == null || sourceName == null || !sourceName.matches("^(?i)https?://.*")) {
+			return super.compile(owningPage, sourceCode, sourceName, startLine);
+		}
+		String hash = ScriptCache.hash(sourceCode);
+		ScriptCache.CachedScript cached = cache.get(sourceName, hash);
+		if (cached != null) {
+			savedCompileTime += cached.getCompileTime();
+			return cached.getScript();
+		}
+		long started = System.currentTimeMillis();
+		Script script = super.compile(owningPage, sourceCode, sourceName, startLine);
+		if (script != null) {
+			cache.put(sourceName, hash, script, sourceCode.length(), System.currentTimeMillis() - started);
+		}
+		return script;
+	}
+
+	public long getSavedCompileTime() {
+		return savedCompileTime;
+	}
+
+	public void resetSavedCompileTime() {
+		savedCompileTime = 0;
+	}
+}
@@ -0,0 +1,429 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.api.HTTPResponse;
+import be.nabu.libs.http.api.client.HTTPClient;
+import be.nabu.libs.http.core.DefaultHTTPResponse;
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeHeader;
+import be.nabu.utils.mime.impl.MimeUtils;
+import be.nabu.utils.mime.impl.PlainMimeContentPart;
+
+/**
+ * A cache for resources on other servers (e.g. libraries on a cdn) shared by all the renders of an application.
+ * It follows the Cache-Control and Expires headers, outdated resources with an ETag or Last-Modified are revalidated with a conditional request.
+ * If a directory is configured, the resources are also stored on disk so they survive a restart, the least recently used files are removed when it grows too large.
+ * Responses that vary on anything but the encoding are not cached as we only key on the url.
+ */
+public class ExternalResourceCache {
+
+	private static Logger logger = LoggerFactory.getLogger(ExternalResourceCache.class);
+	private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])(?:s-maxage|max-age)\\s*=\\s*\"?([0-9]+)", Pattern.CASE_INSENSITIVE);
+	private static final int VERSION = 1;
+
+	// least recently used first
+	private LinkedHashMap<String, CachedResource> resources = new LinkedHashMap<String, CachedResource>(16, 0.75f, true);
+	// the maximum combined size of the cached content in memory
+	private long maxSize;
+	private long size;
+	private File directory;
+	// the maximum combined size of the files on disk
+	private long maxDiskSize;
+	private long diskSize;
+	private final Object diskLock = new Object();
+	private AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), revalidations = new AtomicLong();
+
+	public ExternalResourceCache(long maxSize, File directory, long maxDiskSize) {
+		this.maxSize = maxSize;
+		this.directory = directory;
+		this.maxDiskSize = maxDiskSize;
+		if (directory != null && !directory.exists() && !directory.mkdirs()) {
+			logger.warn("Could not create external resource cache directory: " + directory);
+			this.directory = null;
+		}
+		if (this.directory != null) {
+			synchronized(diskLock) {
+				for (File file : listFiles()) {
+					diskSize += file.length();
+				}
+				evictFiles();
+			}
+		}
+	}
+
+	/**
+	 * Executes the request, using the cached version if possible
+	 */
+	public HTTPResponse execute(HTTPClient client, HTTPRequest request, boolean secure) throws Exception {
+		// we only cache plain fetches
+		if (!"GET".equalsIgnoreCase(request.getMethod())) {
+			return fetch(client, request, secure);
+		}
+		String url = request.getTarget();
+		CachedResource cached = get(url);
+		if (cached != null && cached.isFresh()) {
+			hits.incrementAndGet();
+			return cached.toResponse(request);
+		}
+		if (cached != null && cached.isRevalidatable()) {
+			if (cached.etag != null) {
+				request.getContent().setHeader(new MimeHeader("If-None-Match", cached.etag));
+			}
+			if (cached.lastModified != null) {
+				request.getContent().setHeader(new MimeHeader("If-Modified-Since", cached.lastModified));
+			}
+		}
+		misses.incrementAndGet();
+		HTTPResponse response = fetch(client, request, secure);
+		if (response.getCode() == 304 && cached != null) {
+			revalidations.incrementAndGet();
+			// the new headers tell us how long the resource remains fresh
+			CachedResource refreshed = new CachedResource(url, cached.code, cached.message, cached.headers, cached.content, getMaxAge(response.getContent().getHeaders(), cached.headers));
+			put(refreshed);
+			return refreshed.toResponse(request);
+		}
+		if (response.getCode() != 200 || !isStorable(response.getContent().getHeaders())) {
+			return response;
+		}
+		byte [] content = WebConnectionImpl.toBytes(response);
+		if (content == null) {
+			content = new byte[0];
+		}
+		List<String []> headers = new ArrayList<String []>();
+		for (Header header : response.getContent().getHeaders()) {
+			// the content is stored decoded
+			if (!header.getName().equalsIgnoreCase("Content-Encoding") && !header.getName().equalsIgnoreCase("Transfer-Encoding") && !header.getName().equalsIgnoreCase("Content-Length")) {
+				headers.add(new String [] { header.getName(), MimeUtils.getFullHeaderValue(header) });
+			}
+		}
+		CachedResource resource = new CachedResource(url, response.getCode(), response.getMessage(), headers, content, getMaxAge(response.getContent().getHeaders(), null));
+		put(resource);
+		return resource.toResponse(request);
+	}
+
+	HTTPResponse fetch(HTTPClient client, HTTPRequest request, boolean secure) throws Exception {
+		return client.execute(request, null, secure, true);
+	}
+
+	// without a validator or freshness information there is no use in storing it
+	static boolean isStorable(Header...headers) {
+		String cacheControl = getValue("Cache-Control", headers);
+		if (cacheControl != null && cacheControl.toLowerCase().matches(".*\\b(no-store|private)\\b.*")) {
+			return false;
+		}
+		// we key on the url only, the encoding does not matter because we store the decoded content
+		String vary = getValue("Vary", headers);
+		if (vary != null) {
+			for (String part : vary.split(",")) {
+				if (!part.trim().isEmpty() && !part.trim().equalsIgnoreCase("Accept-Encoding")) {
+					return false;
+				}
+			}
+		}
+		return getValue("ETag", headers) != null || getValue("Last-Modified", headers) != null || getValue("Expires", headers) != null
+			|| (cacheControl != null && MAX_AGE.matcher(cacheControl).find());
+	}
+
+	/**
+	 * How long (in ms) the resource remains fresh, the headers of a revalidation take precedence over the original ones
+	 */
+	static long getMaxAge(Header [] headers, List<String []> original) {
+		String cacheControl = getValue("Cache-Control", headers);
+		String expires = getValue("Expires", headers);
+		if (cacheControl == null && expires == null && original != null) {
+			for (String [] header : original) {
+				if (header[0].equalsIgnoreCase("Cache-Control")) {
+					cacheControl = header[1];
+				}
+				else if (header[0].equalsIgnoreCase("Expires")) {
+					expires = header[1];
+				}
+			}
+		}
+		if (cacheControl != null) {
+			if (cacheControl.toLowerCase().matches(".*\\bno-cache\\b.*")) {
+				return 0;
+			}
+			Matcher matcher = MAX_AGE.matcher(cacheControl);
+			if (matcher.find()) {
+				return Long.parseLong(matcher.group(1)) * 1000;
+			}
+		}
+		if (expires != null) {
+			Date date = Renderer.parseDate(expires);
+			return date == null ? 0 : Math.max(0, date.getTime() - new Date().getTime());
+		}
+		return 0;
+	}
+
+	private static String getValue(String name, Header...headers) {
+		Header header = MimeUtils.getHeader(name, headers);
+		return header == null ? null : MimeUtils.getFullHeaderValue(header);
+	}
+
+	private CachedResource get(String url) {
+		CachedResource resource;
+		synchronized(resources) {
+			resource = resources.get(url);
+		}
+		if (resource == null && directory != null) {
+			resource = read(url);
+			if (resource != null) {
+				remember(resource);
+			}
+		}
+		return resource;
+	}
+
+	private void put(CachedResource resource) {
+		remember(resource);
+		if (directory != null) {
+			write(resource);
+		}
+	}
+
+	private void remember(CachedResource resource) {
+		// no use in evicting everything else for a single resource
+		if (resource.content.length > maxSize) {
+			return;
+		}
+		synchronized(resources) {
+			CachedResource previous = resources.put(resource.url, resource);
+			if (previous != null) {
+				size -= previous.content.length;
+			}
+			size += resource.content.length;
+			Iterator<CachedResource> iterator = resources.values().iterator();
+			while (size > maxSize && iterator.hasNext()) {
+				size -= iterator.next().content.length;
+				iterator.remove();
+			}
+		}
+	}
+
+	private File getFile(String url) {
+		return new File(directory, ScriptCache.hash(url));
+	}
+
+	private CachedResource read(String url) {
+		File file = getFile(url);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (input.readInt() != VERSION || !url.equals(input.readUTF())) {
+					return null;
+				}
+				int code = input.readInt();
+				String message = input.readUTF();
+				long stored = input.readLong();
+				long maxAge = input.readLong();
+				List<String []> headers = new ArrayList<String []>();
+				int amount = input.readInt();
+				for (int i = 0; i < amount; i++) {
+					headers.add(new String [] { input.readUTF(), input.readUTF() });
+				}
+				byte [] content = new byte[input.readInt()];
+				input.readFully(content);
+				CachedResource resource = new CachedResource(url, code, message, headers, content, maxAge);
+				resource.stored = stored;
+				// the modification time tracks when the file was last used
+				file.setLastModified(System.currentTimeMillis());
+				return resource;
+			}
+			finally {
+				input.close();
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Could not read cached resource: " + url, e);
+			return null;
+		}
+	}
+
+	private void write(CachedResource resource) {
+		File file = getFile(resource.url);
+		File temporary = new File(directory, file.getName() + ".tmp" + Thread.currentThread().getId());
+		try {
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			try {
+				output.writeInt(VERSION);
+				output.writeUTF(resource.url);
+				output.writeInt(resource.code);
+				output.writeUTF(resource.message == null ? "" : resource.message);
+				output.writeLong(resource.stored);
+				output.writeLong(resource.maxAge);
+				output.writeInt(resource.headers.size());
+				for (String [] header : resource.headers) {
+					output.writeUTF(header[0]);
+					output.writeUTF(header[1]);
+				}
+				output.writeInt(resource.content.length);
+				output.write(resource.content);
+			}
+			finally {
+				output.close();
+			}
+			synchronized(diskLock) {
+				long previous = file.length();
+				// readers never see a partially written file
+				if (!temporary.renameTo(file) && (!file.delete() || !temporary.renameTo(file))) {
+					logger.warn("Could not store cached resource: " + resource.url);
+				}
+				diskSize += file.length() - previous;
+				evictFiles();
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Could not store cached resource: " + resource.url, e);
+		}
+		finally {
+			if (temporary.exists()) {
+				temporary.delete();
+			}
+		}
+	}
+
+	private File [] listFiles() {
+		File [] files = directory.listFiles();
+		return files == null ? new File[0] : files;
+	}
+
+	// removes the least recently used files until we are within the limit again
+	private void evictFiles() {
+		if (maxDiskSize <= 0 || diskSize <= maxDiskSize) {
+			return;
+		}
+		File [] files = listFiles();
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return Long.compare(o1.lastModified(), o2.lastModified());
+			}
+		});
+		for (File file : files) {
+			if (diskSize <= maxDiskSize) {
+				break;
+			}
+			// temporary files are still being written
+			if (file.getName().contains(".tmp")) {
+				continue;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				diskSize -= length;
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized(resources) {
+			resources.clear();
+			size = 0;
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	// outdated resources that turned out to be unchanged
+	public long getRevalidations() {
+		return revalidations.get();
+	}
+
+	public long getSize() {
+		synchronized(resources) {
+			return size;
+		}
+	}
+
+	private static class CachedResource {
+		private String url, message, etag, lastModified;
+		private int code;
+		private List<String []> headers;
+		private byte [] content;
+		private long stored = System.currentTimeMillis(), maxAge;
+
+		public CachedResource(String url, int code, String message, List<String []> headers, byte [] content, long maxAge) {
+			this.url = url;
+			this.code = code;
+			this.message = message;
+			this.headers = headers;
+			this.content = content;
+			this.maxAge = maxAge;
+			for (String [] header : headers) {
+				if (header[0].equalsIgnoreCase("ETag")) {
+					etag = header[1];
+				}
+				else if (header[0].equalsIgnoreCase("Last-Modified")) {
+					lastModified = header[1];
+				}
+			}
+		}
+
+		public boolean isFresh() {
+			return System.currentTimeMillis() - stored < maxAge;
+		}
+
+		public boolean isRevalidatable() {
+			return etag != null || lastModified != null;
+		}
+
+		public HTTPResponse toResponse(HTTPRequest request) {
+			List<Header> headers = new ArrayList<Header>();
+			for (String [] header : this.headers) {
+				headers.add(new MimeHeader(header[0], header[1]));
+			}
+			headers.add(new MimeHeader("Content-Length", Integer.toString(content.length)));
+			return new DefaultHTTPResponse(request, code, message, new PlainMimeContentPart(null, IOUtils.wrap(content, true), headers.toArray(new Header[headers.size()])));
+		}
+	}
+}
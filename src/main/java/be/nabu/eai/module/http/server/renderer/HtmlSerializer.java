@@ -0,0 +1,182 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.gargoylesoftware.htmlunit.html.DomAttr;
+import com.gargoylesoftware.htmlunit.html.DomCDataSection;
+import com.gargoylesoftware.htmlunit.html.DomComment;
+import com.gargoylesoftware.htmlunit.html.DomDocumentType;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.DomText;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.html.HtmlTemplate;
+
+/**
+ * Writes the dom of a rendered page as html5 in a single pass.
+ * Unlike asXml() this does not wrap script contents in CDATA, so the result can be used as is.
+ */
+public class HtmlSerializer {
+
+	private static Charset UTF8 = Charset.forName("UTF-8");
+	
+	// elements that never have content and are not closed
+	private static Set<String> voidElements = new HashSet<String>(Arrays.asList("area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr"));
+	// elements whose text content is written as is
+	private static Set<String> rawTextElements = new HashSet<String>(Arrays.asList("script", "style", "xmp", "iframe", "noembed", "noframes", "plaintext"));
+	
+	// we don't hold on to buffers that grew beyond this size
+	private static final int MAX_RETAINED_BUFFER = 4 * 1024 * 1024;
+	private static ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>();
+	
+	public static byte [] serialize(HtmlPage page) throws IOException {
+		Buffer buffer = buffers.get();
+		if (buffer == null) {
+			buffer = new Buffer();
+		}
+		else {
+			buffers.remove();
+		}
+		try {
+			Writer writer = new OutputStreamWriter(buffer, UTF8);
+			DomNode child = page.getFirstChild();
+			while (child != null) {
+				write(child, writer);
+				child = child.getNextSibling();
+			}
+			writer.flush();
+			return buffer.toByteArray();
+		}
+		finally {
+			if (buffer.size() <= MAX_RETAINED_BUFFER) {
+				buffer.reset();
+				buffers.set(buffer);
+			}
+		}
+	}
+	
+	private static void write(DomNode node, Writer writer) throws IOException {
+		if (node instanceof DomElement) {
+			DomElement element = (DomElement) node;
+			String name = element instanceof HtmlElement ? ((HtmlElement) element).getTagName() : element.getNodeName();
+			writer.write('<');
+			writer.write(name);
+			for (DomAttr attribute : element.getAttributesMap().values()) {
+				writer.write(' ');
+				writer.write(attribute.getName());
+				writer.write("=\"");
+				escape(attribute.getValue(), writer, true);
+				writer.write('"');
+			}
+			writer.write('>');
+			if (!voidElements.contains(name)) {
+				DomNode child = element instanceof HtmlTemplate ? ((HtmlTemplate) element).getContent().getFirstChild() : element.getFirstChild();
+				while (child != null) {
+					write(child, writer);
+					child = child.getNextSibling();
+				}
+				writer.write("</");
+				writer.write(name);
+				writer.write('>');
+			}
+		}
+		// check before text, a cdata section is a text node as well
+		else if (node instanceof DomCDataSection) {
+			writer.write("<![CDATA[");
+			writer.write(((DomCDataSection) node).getData());
+			writer.write("]]>");
+		}
+		else if (node instanceof DomText) {
+			String data = ((DomText) node).getData();
+			DomNode parent = node.getParentNode();
+			if (parent instanceof HtmlElement && rawTextElements.contains(((HtmlElement) parent).getTagName())) {
+				writer.write(data);
+			}
+			else {
+				escape(data, writer, false);
+			}
+		}
+		else if (node instanceof DomComment) {
+			writer.write("<!--");
+			writer.write(((DomComment) node).getData());
+			writer.write("-->");
+		}
+		else if (node instanceof DomDocumentType) {
+			DomDocumentType type = (DomDocumentType) node;
+			writer.write("<!DOCTYPE ");
+			writer.write(type.getName());
+			if (type.getPublicId() != null && !type.getPublicId().isEmpty()) {
+				writer.write(" PUBLIC \"");
+				writer.write(type.getPublicId());
+				writer.write('"');
+				if (type.getSystemId() != null && !type.getSystemId().isEmpty()) {
+					writer.write(" \"");
+					writer.write(type.getSystemId());
+					writer.write('"');
+				}
+			}
+			else if (type.getSystemId() != null && !type.getSystemId().isEmpty()) {
+				writer.write(" SYSTEM \"");
+				writer.write(type.getSystemId());
+				writer.write('"');
+			}
+			writer.write('>');
+		}
+	}
+	
+	// writes the unescaped parts in chunks
+	private static void escape(String content, Writer writer, boolean attribute) throws IOException {
+		if (content == null) {
+			return;
+		}
+		int start = 0;
+		for (int i = 0; i < content.length(); i++) {
+			String replacement;
+			switch (content.charAt(i)) {
+				case '&': replacement = "&amp;"; break;
+				case '\u00a0': replacement = "&nbsp;"; break;
+				case '"': replacement = attribute ? "&quot;" : null; break;
+				case '<': replacement = attribute ? null : "&lt;"; break;
+				case '>': replacement = attribute ? null : "&gt;"; break;
+				default: replacement = null;
+			}
+			if (replacement != null) {
+				writer.write(content, start, i - start);
+				writer.write(replacement);
+				start = i + 1;
+			}
+		}
+		writer.write(content, start, content.length() - start);
+	}
+	
+	private static class Buffer extends ByteArrayOutputStream {
+		public Buffer() {
+			super(64 * 1024);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps a distribution of durations in fixed buckets so we can calculate percentiles without storing every value.
+ * The percentiles are the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+
+	// the upper bounds (in ms) of the buckets, there is a final bucket for everything above
+	private static final long [] BOUNDS = new long [] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 30000, 60000 };
+
+	private String name;
+	private AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+	private AtomicLong count = new AtomicLong(), total = new AtomicLong(), max = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	void record(long duration) {
+		int index = 0;
+		while (index < BOUNDS.length && duration > BOUNDS[index]) {
+			index++;
+		}
+		buckets.incrementAndGet(index);
+		count.incrementAndGet();
+		total.addAndGet(duration);
+		long current = max.get();
+		while (duration > current && !max.compareAndSet(current, duration)) {
+			current = max.get();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getAverage() {
+		long count = this.count.get();
+		return count == 0 ? 0 : total.get() / count;
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getP50() {
+		return getPercentile(0.5);
+	}
+
+	public long getP90() {
+		return getPercentile(0.9);
+	}
+
+	public long getP99() {
+		return getPercentile(0.99);
+	}
+
+	public long getPercentile(double percentile) {
+		long count = this.count.get();
+		if (count == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(count * percentile);
+		long seen = 0;
+		for (int i = 0; i < BOUNDS.length; i++) {
+			seen += buckets.get(i);
+			if (seen >= threshold) {
+				return BOUNDS[i];
+			}
+		}
+		// everything above the last bound
+		return max.get();
+	}
+}
@@ -0,0 +1,60 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import com.gargoylesoftware.htmlunit.DownloadedContent;
+
+/**
+ * Content that is served with a prefix (e.g. injected javascript) without concatenating both into a new array.
+ * Neither array is modified, the content can be shared with other responses.
+ */
+public class PrefixedContent implements DownloadedContent {
+
+	private static final long serialVersionUID = 1L;
+	
+	private byte [] prefix, content;
+
+	public PrefixedContent(byte [] prefix, byte [] content) {
+		this.prefix = prefix;
+		this.content = content;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return new SequenceInputStream(new ByteArrayInputStream(prefix), new ByteArrayInputStream(content));
+	}
+
+	@Override
+	public void cleanUp() {
+		// nothing to clean up
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return length() == 0;
+	}
+
+	@Override
+	public long length() {
+		return prefix.length + content.length;
+	}
+}
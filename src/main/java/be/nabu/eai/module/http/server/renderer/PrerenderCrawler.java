@@ -0,0 +1,230 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.nabu.libs.http.api.HTTPRequest;
+
+/**
+ * Starts from a page and follows the links in the rendered pages to render the reachable part of the site into the cache.
+ * Only links to the same host are followed, the crawl is bounded by the depth, the amount of pages and the include/exclude patterns.
+ */
+public class PrerenderCrawler {
+
+	private static Logger logger = LoggerFactory.getLogger(PrerenderCrawler.class);
+
+	private Renderer renderer;
+	private String host;
+	private int maxDepth = 3, maxPages = 1000, concurrency = 2;
+	// how long (in ms) each worker waits between two renders
+	private long delay;
+	// regexes that are matched against the path of a link
+	private List<Pattern> includes = new ArrayList<Pattern>(), excludes = new ArrayList<Pattern>();
+	private WarmupStatus status = new WarmupStatus();
+	private Set<String> visited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	// the amount of pages that are scheduled but not yet done
+	private AtomicInteger pending = new AtomicInteger();
+	private ExecutorService executor;
+	private String origin;
+
+	public PrerenderCrawler(Renderer renderer, String host) {
+		this.renderer = renderer;
+		this.host = host == null ? "localhost" : host;
+	}
+
+	/**
+	 * Crawls the site starting from the given path, this blocks until there is nothing left to crawl
+	 */
+	public WarmupStatus crawl(String path, final String language) {
+		URI start = URI.create((renderer.isSecure() ? "https" : "http") + "://" + host + path);
+		origin = getOrigin(start);
+		status.start(0);
+		executor = Executors.newFixedThreadPool(Math.max(1, concurrency), new ThreadFactory() {
+			private AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "renderer-crawler-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			schedule(start, 0, language);
+			synchronized(pending) {
+				while (pending.get() > 0) {
+					pending.wait();
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		status.stop(false);
+		logger.info("Crawled " + status.getRendered() + " pages (" + status.getFailed() + " failed) at " + String.format("%.2f", status.getThroughput()) + " pages/s");
+		return status;
+	}
+
+	private synchronized void schedule(final URI uri, final int depth, final String language) {
+		if (status.getTotal() >= maxPages || !visited.add(renderer.getCacheKey(uri))) {
+			return;
+		}
+		status.discovered();
+		pending.incrementAndGet();
+		executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					render(uri, depth, language);
+				}
+				finally {
+					if (pending.decrementAndGet() == 0) {
+						synchronized(pending) {
+							pending.notifyAll();
+						}
+					}
+				}
+			}
+		});
+	}
+
+	private void render(URI uri, int depth, String language) {
+		String path = CacheWarmer.getPath(uri.toString());
+		try {
+			HTTPRequest request = CacheWarmer.newRequest(host, path, language);
+			String key = renderer.getCacheKey(request);
+			RenderedPage page = renderer.renderInBackground(key, request, true);
+			status.rendered();
+			if (depth < maxDepth && page.getLinks() != null) {
+				for (String link : page.getLinks()) {
+					URI linked = toUri(link);
+					if (linked != null && origin.equals(getOrigin(linked)) && isAllowed(linked.getPath())) {
+						schedule(linked, depth + 1, language);
+					}
+				}
+			}
+			if (delay > 0) {
+				Thread.sleep(delay);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (Exception e) {
+			logger.warn("Could not crawl: " + path, e);
+			status.failed(path, e);
+		}
+	}
+
+	private boolean isAllowed(String path) {
+		if (path == null) {
+			return false;
+		}
+		for (Pattern exclude : excludes) {
+			if (exclude.matcher(path).matches()) {
+				return false;
+			}
+		}
+		if (includes.isEmpty()) {
+			return true;
+		}
+		for (Pattern include : includes) {
+			if (include.matcher(path).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// the normalized scheme, host and port, this takes host aliases into account
+	private String getOrigin(URI uri) {
+		URI normalized = URI.create(renderer.getCacheKey(uri));
+		return normalized.getScheme() + "://" + normalized.getHost() + (normalized.getPort() < 0 ? "" : ":" + normalized.getPort());
+	}
+
+	private static URI toUri(String link) {
+		try {
+			URI uri = new URI(link);
+			return uri.getHost() == null ? null : uri;
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	public void addInclude(String regex) {
+		includes.add(Pattern.compile(regex));
+	}
+
+	public void addExclude(String regex) {
+		excludes.add(Pattern.compile(regex));
+	}
+
+	public WarmupStatus getStatus() {
+		return status;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	public int getMaxPages() {
+		return maxPages;
+	}
+
+	public void setMaxPages(int maxPages) {
+		this.maxPages = maxPages;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	public long getDelay() {
+		return delay;
+	}
+
+	public void setDelay(long delay) {
+		this.delay = delay;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.Date;
+
+/**
+ * The failure history of a single url
+ */
+public class RenderFailure {
+
+	private String url, message;
+	private int failures;
+	private Date lastFailure, retryAfter;
+
+	public RenderFailure(String url) {
+		this.url = url;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	// the message of the last failure
+	public String getMessage() {
+		return message;
+	}
+
+	// the amount of consecutive failed renders
+	public int getFailures() {
+		return failures;
+	}
+
+	public Date getLastFailure() {
+		return lastFailure;
+	}
+
+	// we don't try to render the url again before this moment
+	public Date getRetryAfter() {
+		return retryAfter;
+	}
+
+	synchronized void failed(String message, long backoff) {
+		this.failures++;
+		this.message = message;
+		this.lastFailure = new Date();
+		this.retryAfter = new Date(lastFailure.getTime() + backoff);
+	}
+}
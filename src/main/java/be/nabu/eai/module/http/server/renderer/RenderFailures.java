@@ -0,0 +1,108 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which urls failed to render so we don't keep spending a full render on them.
+ * Each consecutive failure doubles the time we wait before trying again, up to a maximum. A successful render clears the history.
+ */
+public class RenderFailures {
+
+	// the amount of urls we track before cleaning up the ones we no longer back off for
+	private static final int CLEANUP_SIZE = 1000;
+
+	private ConcurrentHashMap<String, RenderFailure> failures = new ConcurrentHashMap<String, RenderFailure>();
+	// the back-off (in ms) after the first failure
+	private long backoff = 5000;
+	// the maximum back-off (in ms)
+	private long maxBackoff = 600000;
+
+	/**
+	 * Returns the failure if we are still backing off for this url
+	 */
+	public RenderFailure getBackoff(String url) {
+		RenderFailure failure = failures.get(url);
+		return failure != null && failure.getRetryAfter().after(new Date()) ? failure : null;
+	}
+
+	public void failed(String url, Throwable cause) {
+		failed(url, cause == null ? null : cause.getMessage());
+	}
+
+	public void failed(String url, String message) {
+		if (failures.size() >= CLEANUP_SIZE) {
+			cleanup();
+		}
+		RenderFailure failure = failures.get(url);
+		if (failure == null) {
+			failure = new RenderFailure(url);
+			RenderFailure existing = failures.putIfAbsent(url, failure);
+			if (existing != null) {
+				failure = existing;
+			}
+		}
+		// the shift is capped to prevent overflowing
+		failure.failed(message, Math.min(maxBackoff, backoff << Math.min(failure.getFailures(), 30)));
+	}
+
+	public void succeeded(String url) {
+		failures.remove(url);
+	}
+
+	public List<RenderFailure> getFailures() {
+		return new ArrayList<RenderFailure>(failures.values());
+	}
+
+	public void clear() {
+		failures.clear();
+	}
+
+	// once the maximum back-off has passed since the last retry moment, the history is no longer relevant
+	private void cleanup() {
+		long threshold = new Date().getTime() - maxBackoff;
+		Iterator<RenderFailure> iterator = failures.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getRetryAfter().getTime() < threshold) {
+				iterator.remove();
+			}
+		}
+	}
+
+	public long getBackoff() {
+		return backoff;
+	}
+
+	public void setBackoff(long backoff) {
+		this.backoff = backoff;
+	}
+
+	public long getMaxBackoff() {
+		return maxBackoff;
+	}
+
+	public void setMaxBackoff(long maxBackoff) {
+		this.maxBackoff = maxBackoff;
+	}
+}
@@ -0,0 +1,30 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+/**
+ * What to send to the bot when we can not render the page for it
+ */
+public enum RenderFallback {
+	// serve the cached version even if it is outdated, if there is none, the request passes through
+	STALE,
+	// send back a 503 with a Retry-After
+	UNAVAILABLE,
+	// let the web application serve the unrendered page
+	PASSTHROUGH
+}
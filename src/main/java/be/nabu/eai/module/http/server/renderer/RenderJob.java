@@ -0,0 +1,132 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.nabu.eai.module.web.application.WebApplication;
+
+/**
+ * Renders a batch of pages into the cache, the job can be polled for its progress using its id.
+ * The renders go through the scheduler of the renderer, the threads of the job only limit how many pages it has in flight.
+ */
+public class RenderJob {
+
+	private static Logger logger = LoggerFactory.getLogger(RenderJob.class);
+
+	private String id = UUID.randomUUID().toString().replace("-", "");
+	private volatile Date started, stopped;
+	private int total;
+	private List<RenderJobResult> results = Collections.synchronizedList(new ArrayList<RenderJobResult>());
+	private CountDownLatch latch;
+
+	RenderJob start(final RendererArtifact artifact, final WebApplication application, List<CacheRequest> requests, int concurrency) {
+		this.total = requests.size();
+		this.latch = new CountDownLatch(total);
+		this.started = new Date();
+		if (total == 0) {
+			stopped = new Date();
+			return this;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, total)), new ThreadFactory() {
+			private AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "renderer-job-" + id + "-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (final CacheRequest request : requests) {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					long started = System.currentTimeMillis();
+					try {
+						boolean rendered = artifact.update(application, request.getUrl(), request.getLanguage(), request.getLastModified());
+						results.add(new RenderJobResult(request.getUrl(), request.getLanguage(), rendered ? RenderJobResult.Status.RENDERED : RenderJobResult.Status.UNCHANGED, null, System.currentTimeMillis() - started));
+					}
+					catch (Exception e) {
+						logger.warn("Could not cache: " + request.getUrl(), e);
+						results.add(new RenderJobResult(request.getUrl(), request.getLanguage(), RenderJobResult.Status.FAILED, e.getMessage(), System.currentTimeMillis() - started));
+					}
+					finally {
+						latch.countDown();
+						if (latch.getCount() == 0) {
+							stopped = new Date();
+						}
+					}
+				}
+			});
+		}
+		// the threads stop once the queue is empty
+		executor.shutdown();
+		return this;
+	}
+
+	/**
+	 * Waits for the job to finish, returns false if it did not finish in time
+	 */
+	public boolean await(long timeout) throws InterruptedException {
+		return latch.await(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	public Date getStopped() {
+		return stopped;
+	}
+
+	public boolean isDone() {
+		return latch.getCount() == 0;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getCompleted() {
+		return results.size();
+	}
+
+	public List<RenderJobResult> getResults() {
+		synchronized(results) {
+			return new ArrayList<RenderJobResult>(results);
+		}
+	}
+}
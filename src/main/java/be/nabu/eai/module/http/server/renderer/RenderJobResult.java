@@ -0,0 +1,69 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.net.URI;
+
+/**
+ * The outcome of a single page in a render job
+ */
+public class RenderJobResult {
+
+	public enum Status {
+		// the page was rendered into the cache
+		RENDERED,
+		// the cached version was still valid
+		UNCHANGED,
+		FAILED
+	}
+
+	private URI url;
+	private String language, message;
+	private Status status;
+	// how long (in ms) it took
+	private long duration;
+
+	public RenderJobResult(URI url, String language, Status status, String message, long duration) {
+		this.url = url;
+		this.language = language;
+		this.status = status;
+		this.message = message;
+		this.duration = duration;
+	}
+
+	public URI getUrl() {
+		return url;
+	}
+
+	public String getLanguage() {
+		return language;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+/**
+ * The phases of a render we keep timings for
+ */
+public enum RenderPhase {
+	// getting a web client from the pool (or creating one)
+	ACQUIRE,
+	// fetching the initial document
+	DOCUMENT,
+	// fetching resources (scripts, stylesheets, api calls...) from the application itself, the sum of all fetches so concurrent ones overlap
+	INTERNAL_RESOURCES,
+	// fetching resources from other servers, also a sum
+	EXTERNAL_RESOURCES,
+	// loading the page minus the wall clock time during which something was being fetched, this is mostly script execution
+	SCRIPT,
+	// waiting for the page to settle
+	SETTLE,
+	SERIALIZE,
+	CACHE_WRITE,
+	// the render as a whole
+	TOTAL
+}
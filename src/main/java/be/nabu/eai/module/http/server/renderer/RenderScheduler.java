@@ -0,0 +1,163 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.nabu.libs.http.HTTPException;
+
+/**
+ * Runs renders on a dedicated set of threads so we can cap the amount of concurrent renders.
+ * If the renders are queued for too long or the queue is full, a {@link RejectedExecutionException} is thrown so the caller can shed the load.
+ */
+public class RenderScheduler {
+
+	private ThreadPoolExecutor executor;
+	private long queueTimeout;
+	// set on the threads of the executor
+	private ThreadLocal<Boolean> worker = new ThreadLocal<Boolean>();
+	private RendererMetrics metrics;
+
+	public RenderScheduler(final String name, int concurrency, int queueSize, long queueTimeout, RendererMetrics metrics) {
+		this.queueTimeout = queueTimeout;
+		this.metrics = metrics;
+		this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+			private AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						worker.set(true);
+						runnable.run();
+					}
+				}, "renderer-" + name + "-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Schedules the render and waits for it to finish
+	 */
+	public <T> T execute(final Callable<T> callable) throws Exception {
+		// we are already on one of our own threads (e.g. a background refresh), waiting for another one could deadlock the pool
+		if (Boolean.TRUE.equals(worker.get())) {
+			return callable.call();
+		}
+		final long queued = System.currentTimeMillis();
+		final AtomicBoolean started = new AtomicBoolean();
+		Future<T> future;
+		try {
+			future = executor.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					// the caller gave up on us
+					if (!started.compareAndSet(false, true)) {
+						return null;
+					}
+					metrics.dequeued(System.currentTimeMillis() - queued);
+					return callable.call();
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			metrics.rejectedRender();
+			throw e;
+		}
+		metrics.queued();
+		try {
+			try {
+				return future.get(queueTimeout, TimeUnit.MILLISECONDS);
+			}
+			catch (TimeoutException e) {
+				// if it is still in the queue, we stop waiting for it
+				if (started.compareAndSet(false, true)) {
+					future.cancel(false);
+					if (future instanceof Runnable) {
+						executor.remove((Runnable) future);
+					}
+					metrics.dequeued(System.currentTimeMillis() - queued);
+					metrics.rejectedRender();
+					throw new RejectedExecutionException("Render waited more than " + queueTimeout + "ms in the queue");
+				}
+				return future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HTTPException(503, e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Schedules a render without waiting for it, if the queue is full, a {@link RejectedExecutionException} is thrown
+	 */
+	public <T> Future<T> submit(final Callable<T> callable) {
+		final long queued = System.currentTimeMillis();
+		Future<T> future;
+		try {
+			future = executor.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					metrics.dequeued(System.currentTimeMillis() - queued);
+					return callable.call();
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			metrics.rejectedRender();
+			throw e;
+		}
+		metrics.queued();
+		return future;
+	}
+
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	public int getActive() {
+		return executor.getActiveCount();
+	}
+
+	public boolean isShutdown() {
+		return executor.isShutdown();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
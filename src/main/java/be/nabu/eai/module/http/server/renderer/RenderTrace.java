@@ -0,0 +1,99 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records every resource that was requested during a single render so we can see where the time went
+ */
+public class RenderTrace {
+
+	// the width of the bars in the textual waterfall
+	private static final int WIDTH = 50;
+
+	private String url;
+	private long started = System.currentTimeMillis();
+	private volatile long duration;
+	// set if the render failed
+	private volatile String error;
+	private List<ResourceTrace> resources = Collections.synchronizedList(new ArrayList<ResourceTrace>());
+
+	public RenderTrace(String url) {
+		this.url = url;
+	}
+
+	void add(String url, String method, ResourceTrace.Origin origin, int status, long bytes, long start, long end) {
+		resources.add(new ResourceTrace(url, method, origin, status, bytes, start - started, end - started));
+	}
+
+	void stop() {
+		duration = System.currentTimeMillis() - started;
+	}
+
+	void failed(Throwable cause) {
+		error = cause.getMessage();
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	// the total time (in ms) of the render
+	public long getDuration() {
+		return duration;
+	}
+
+	public List<ResourceTrace> getResources() {
+		synchronized(resources) {
+			return new ArrayList<ResourceTrace>(resources);
+		}
+	}
+
+	/**
+	 * A textual waterfall of the resources
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("Render of ").append(url).append(" took ").append(duration).append("ms\n");
+		if (error != null) {
+			builder.append("Failed: ").append(error).append("\n");
+		}
+		builder.append("\n");
+		builder.append(String.format("%7s %7s %-8s %6s %10s  %-" + WIDTH + "s  %s\n", "start", "time", "origin", "status", "bytes", "", "url"));
+		long total = Math.max(1, duration);
+		for (ResourceTrace resource : getResources()) {
+			int offset = (int) Math.min(WIDTH - 1, resource.getStart() * WIDTH / total);
+			int length = (int) Math.max(1, Math.min(WIDTH - offset, resource.getDuration() * WIDTH / total));
+			StringBuilder bar = new StringBuilder();
+			for (int i = 0; i < WIDTH; i++) {
+				bar.append(i >= offset && i < offset + length ? '#' : ' ');
+			}
+			builder.append(String.format("%7d %7d %-8s %6d %10d  %s  %s %s\n", resource.getStart(), resource.getDuration(), resource.getOrigin(), resource.getStatus(), resource.getBytes(), bar, resource.getMethod(), resource.getUrl()));
+		}
+		return builder.toString();
+	}
+}
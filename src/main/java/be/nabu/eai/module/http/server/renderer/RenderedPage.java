@@ -0,0 +1,184 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import be.nabu.utils.io.IOUtils;
+
+/**
+ * A rendered page as it is kept in the cache, the content is compressed once and then only kept compressed.
+ * It is decompressed when it is sent, the server does the encoding on the wire.
+ * Apart from the content we keep the status code and the headers that matter, so we can correctly cache redirects and pages that were not found.
+ */
+public class RenderedPage {
+
+	private volatile byte [] compressed;
+	private volatile byte [] content;
+	private int code = 200;
+	// the headers we want to send back along with the content
+	private Map<String, String> headers = new LinkedHashMap<String, String>();
+	// a hash of the content, used as etag
+	private volatile String hash;
+	// when the page was rendered
+	private Date created;
+	// the links in the page, only known right after rendering, they are not cached
+	private List<String> links;
+
+	public RenderedPage(byte [] content) {
+		this(200, null, content);
+	}
+	
+	public RenderedPage(int code, Map<String, String> headers, byte [] content) {
+		this.code = code;
+		if (headers != null) {
+			this.headers.putAll(headers);
+		}
+		this.content = content;
+		this.hash = hash(content);
+		this.created = new Date();
+	}
+	
+	private RenderedPage() {
+		// used when deserializing
+	}
+	
+	static RenderedPage fromCompressed(int code, Map<String, String> headers, byte [] compressed, String hash, Date created) {
+		RenderedPage page = new RenderedPage();
+		page.code = code;
+		if (headers != null) {
+			page.headers.putAll(headers);
+		}
+		page.compressed = compressed;
+		page.hash = hash;
+		page.created = created;
+		return page;
+	}
+
+	// the gzipped content, once calculated we no longer keep the uncompressed version
+	public byte [] getCompressed() {
+		if (compressed == null) {
+			synchronized(this) {
+				if (compressed == null) {
+					compressed = compress(content);
+					content = null;
+				}
+			}
+		}
+		return compressed;
+	}
+	
+	public int getCode() {
+		return code;
+	}
+
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	public byte [] getContent() {
+		byte [] content = this.content;
+		return content == null ? decompress(getCompressed()) : content;
+	}
+	
+	public String getHash() {
+		if (hash == null) {
+			hash = hash(getContent());
+		}
+		return hash;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+
+	public List<String> getLinks() {
+		return links;
+	}
+
+	void setLinks(List<String> links) {
+		this.links = links;
+	}
+
+	public boolean isEmpty() {
+		byte [] content = this.content;
+		if (content != null) {
+			return content.length == 0;
+		}
+		byte [] compressed = getCompressed();
+		// the last four bytes of a gzip stream contain the uncompressed size
+		int length = compressed.length;
+		return length >= 4 && (compressed[length - 4] | compressed[length - 3] | compressed[length - 2] | compressed[length - 1]) == 0;
+	}
+
+	private static String hash(byte [] content) {
+		try {
+			byte [] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			StringBuilder builder = new StringBuilder();
+			for (byte single : digest) {
+				builder.append(String.format("%02x", single & 0xff));
+			}
+			return builder.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static byte [] compress(byte [] content) {
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+			GZIPOutputStream gzip = new GZIPOutputStream(output);
+			try {
+				gzip.write(content);
+			}
+			finally {
+				gzip.close();
+			}
+			return output.toByteArray();
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static byte [] decompress(byte [] compressed) {
+		try {
+			GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed));
+			try {
+				return IOUtils.toBytes(IOUtils.wrap(gzip));
+			}
+			finally {
+				gzip.close();
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import be.nabu.libs.cache.api.DataSerializer;
+import be.nabu.utils.io.IOUtils;
+
+/**
+ * Stores rendered pages in a versioned binary format.
+ * Caches filled by older versions of the renderer contain the raw html, those are still read as is.
+ */
+public class RenderedPageSerializer implements DataSerializer<RenderedPage> {
+
+	// html can not start with this byte
+	private static final int MARKER = 0;
+	private static final int VERSION = 1;
+	
+	@Override
+	public void serialize(RenderedPage page, OutputStream output) throws IOException {
+		DataOutputStream data = new DataOutputStream(output);
+		data.writeByte(MARKER);
+		data.writeByte(VERSION);
+		data.writeUTF(page.getHash());
+		data.writeLong(page.getCreated() == null ? -1 : page.getCreated().getTime());
+		data.writeShort(page.getCode());
+		data.writeShort(page.getHeaders().size());
+		for (Map.Entry<String, String> header : page.getHeaders().entrySet()) {
+			data.writeUTF(header.getKey());
+			data.writeUTF(header.getValue());
+		}
+		data.writeInt(page.getCompressed().length);
+		data.write(page.getCompressed());
+		data.flush();
+	}
+
+	@Override
+	public RenderedPage deserialize(InputStream input) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(input, 1);
+		int first = pushback.read();
+		if (first < 0) {
+			return null;
+		}
+		else if (first != MARKER) {
+			pushback.unread(first);
+			return new RenderedPage(IOUtils.toBytes(IOUtils.wrap(pushback)));
+		}
+		DataInputStream data = new DataInputStream(pushback);
+		int version = data.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported rendered page version: " + version);
+		}
+		String hash = data.readUTF();
+		long time = data.readLong();
+		Date created = time < 0 ? null : new Date(time);
+		int code = data.readUnsignedShort();
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		int amount = data.readUnsignedShort();
+		for (int i = 0; i < amount; i++) {
+			headers.put(data.readUTF(), data.readUTF());
+		}
+		byte [] compressed = new byte[data.readInt()];
+		data.readFully(compressed);
+		return RenderedPage.fromCompressed(code, headers, compressed, hash, created);
+	}
+
+	@Override
+	public Class<RenderedPage> getDataClass() {
+		return RenderedPage.class;
+	}
+}
@@ -17,13 +17,33 @@
 
 package be.nabu.eai.module.http.server.renderer;
 
-import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,14 +52,18 @@ import be.nabu.eai.module.http.server.RepositoryExceptionFormatter;
 import be.nabu.eai.module.web.application.WebApplication;
 import be.nabu.eai.repository.EAIRepositoryUtils;
 import be.nabu.eai.repository.Notification;
+import be.nabu.eai.repository.api.LanguageProvider;
 import be.nabu.libs.authentication.api.Token;
 import be.nabu.libs.cache.api.Cache;
+import be.nabu.libs.cache.api.CacheEntry;
+import be.nabu.libs.cache.api.ExplorableCache;
 import be.nabu.libs.events.api.EventHandler;
 import be.nabu.libs.http.HTTPCodes;
 import be.nabu.libs.http.HTTPException;
 import be.nabu.libs.http.api.HTTPRequest;
 import be.nabu.libs.http.api.HTTPResponse;
 import be.nabu.libs.http.api.client.HTTPClient;
+import be.nabu.libs.http.core.DefaultHTTPRequest;
 import be.nabu.libs.http.core.DefaultHTTPResponse;
 import be.nabu.libs.http.core.HTTPUtils;
 import be.nabu.libs.validator.api.ValidationMessage.Severity;
@@ -50,60 +74,30 @@ import be.nabu.utils.mime.impl.MimeUtils;
 import be.nabu.utils.mime.impl.PlainMimeContentPart;
 import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
 
-import com.gargoylesoftware.htmlunit.BrowserVersion;
-import com.gargoylesoftware.htmlunit.NicelyResynchronizingAjaxController;
-import com.gargoylesoftware.htmlunit.SilentCssErrorHandler;
+import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.TextPage;
 import com.gargoylesoftware.htmlunit.UnexpectedPage;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlAnchor;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.xml.XmlPage;
 
 public class Renderer implements EventHandler<HTTPRequest, HTTPResponse> {
 	
-	// https://www.keycdn.com/blog/web-crawlers
-	private static List<String> defaultAgents = Arrays.asList(new String [] {
-		// ------------------------- GOOGLE -----------------------------
-		// use https://www.google.com/webmasters/tools/googlebot-fetch?pli=1 to debug
-		// google (multiple search bots)
-		"(?i).*Googlebot.*",
-		// google ads
-		"(?i).*AdsBot.*",
-		"(?i).*Mediapartners-Google.*",
-		"(?i).*developers.google.com.*",
-		
-		// -------------------------- MICROSOFT ------------------------
-		// https://www.bing.com/toolbox/webmaster/
-		"(?i).*Bingbot.*",
-		
-		// -------------------------- LINKEDIN -------------------------
-		"(?i).*LinkedInBot.*",
-		
-		// -------------------------- TWITTER -------------------------
-		"(?i).*TwitterBot.*",
-		
-		// -------------------------- PINTEREST -------------------------
-		"(?i).*Pinterestbot.*",
-		
-		// -------------------------- YAHOO ----------------------------
-		"(?i).*Slurp.*",
-		
-		// -------------------------- OTHER ----------------------------
-		"(?i).*DuckDuckBot.*",
-		"(?i).*Baiduspider.*",
-		"(?i).*YandexBot.*",
-		"(?i).*Sogou.*",
-		"(?i).*Exabot.*",
-		"(?i).*facebook.com.*",
-		"(?i).*crawler@alexa.com.*",
-		
-		// catch all
-		"(?i).*(bot|googlebot|crawler|spider|robot|crawling).*"
-	});
+	// push the new url in the history and let the router know
+	public static final String DEFAULT_SHELL_ROUTE_SCRIPT = "window.history.pushState(null, null, ${url});"
+		+ " var event = document.createEvent('Event'); event.initEvent('popstate', true, true); window.dispatchEvent(event);";
+	private static final int MAX_SHELL_RENDERS = 100;
+	// how long (in ms) a background render waits before trying again when the scheduler is saturated
+	private static final long BACKGROUND_RETRY_INTERVAL = 1000;
+	// request headers that should not end up on the requests of the render
+	private static final List<String> UNFORWARDED_HEADERS = Arrays.asList("if-none-match", "if-modified-since", "if-match", "if-range", "if-unmodified-since", "range");
 	
-	private List<String> agents = new ArrayList<String>();
-	private String pathRegex;
+	private UserAgentClassifier classifier = new UserAgentClassifier(null);
+	private Pattern pathRegex;
 	private WebApplication application;
 	private HTTPClient client;
 
@@ -111,16 +105,48 @@ public class Renderer implements EventHandler<HTTPRequest, HTTPResponse> {
 	private static Logger logger = LoggerFactory.getLogger(Renderer.class);
 
 	private Cache cache;
+	private WebClientPool pool;
+	private ScriptCache scriptCache;
+	private RendererMetrics metrics = new RendererMetrics();
+	private RenderScheduler scheduler;
+	private RenderFallback fallback = RenderFallback.PASSTHROUGH;
+	// in seconds
+	private int retryAfter = 60;
+	// urls that recently failed to render and what we send back while we back off
+	private RenderFailures failures = new RenderFailures();
+	private RenderFallback failureFallback = RenderFallback.STALE;
+	private CacheKeyNormalizer normalizer;
+	// resources we don't fetch during a render
+	private ResourceFilter filter;
+	// resources from other servers, shared by all renders
+	private ExternalResourceCache externalCache;
+	// the static resources of the application itself
+	private StaticResourceCache staticCache;
+	// fetches the scripts and stylesheets of a page in parallel
+	private ExecutorService prefetcher;
+	// device classes we render separately, matched against the user agent
+	private Map<String, Pattern> devices = new LinkedHashMap<String, Pattern>();
+	private Map<String, String> deviceAgents = new ConcurrentHashMap<String, String>();
+	// how long (in ms) a cached page is considered fresh and how long after that we still serve it while refreshing
+	private Long cacheTimeout, staleTimeout;
+	private Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	// whether we keep the application loaded in pooled clients and use the client-side router for subsequent renders
+	private boolean warmShell;
+	private String shellRouteScript = DEFAULT_SHELL_ROUTE_SCRIPT;
+	// how long (in ms) the page has to be idle before we consider it rendered and how long we wait at most
+	private long settleQuietPeriod = 200, settleTimeout = 10000;
+	// a javascript expression that evaluates to true once the application is done rendering
+	private String readySignal;
+	private Map<WebClient, Integer> shellRenders = Collections.synchronizedMap(new WeakHashMap<WebClient, Integer>());
+	// the renders that are currently ongoing
+	private ConcurrentMap<String, FutureTask<RenderedPage>> renders = new ConcurrentHashMap<String, FutureTask<RenderedPage>>();
 
 	public Renderer(WebApplication application, HTTPClient client, Cache cache) {
 		this.application = application;
 		this.client = client;
 		this.cache = cache;
 		
-		// in the future we may want to toggle this behavior
-		this.agents.addAll(defaultAgents);
-		
-		this.secure = application.getConfig().getVirtualHost() != null && application.getConfig().getVirtualHost().getServer() != null 
+		this.secure = application != null && application.getConfig().getVirtualHost() != null && application.getConfig().getVirtualHost().getServer() != null 
 			? application.getConfig().getVirtualHost().getServer().isSecure()
 			: false;
 	}
@@ -131,17 +157,13 @@ public class Renderer implements EventHandler<HTTPRequest, HTTPResponse> {
 			return null;
 		}
 		String userAgent = null;
-		boolean resolve = pathRegex == null ? false : request.getTarget().matches(pathRegex);
-		if (request.getContent() != null && agents.size() > 0) {
+		boolean resolve = pathRegex == null ? false : pathRegex.matcher(request.getTarget()).matches();
+		if (request.getContent() != null) {
 			Header header = MimeUtils.getHeader("User-Agent", request.getContent().getHeaders());
 			if (header != null) {
 				userAgent = MimeUtils.getFullHeaderValue(header);
-				for (String agent : agents) {
-					boolean agentMatch = userAgent.matches(agent);
-					if (agentMatch) {
-						resolve = true;
-						break;
-					}
+				if (!resolve) {
+					resolve = classifier.isBot(userAgent);
 				}
 			}
 		}
@@ -175,34 +197,84 @@ public class Renderer implements EventHandler<HTTPRequest, HTTPResponse> {
 			notification.setCode("RENDERER-0");
 			notification.setType("nabu.web.renderer.bot");
 			
-			byte [] bytes = null;
+			// on the development path you can ask for a trace of the render instead of the page itself
+			if (pathRegex != null && request.getTarget().contains("$trace") && pathRegex.matcher(request.getTarget()).matches()) {
+				return wrapIntoResponse(request, trace(request, uri.toString()));
+			}
+			
+			// different urls can point to the same page
+			String key = getCacheKey(uri, getLanguage(request), getDevice(userAgent));
+			RenderedPage page = null;
+			// an outdated version that we can fall back to
+			RenderedPage stale = null;
+			boolean revalidating = false;
 			if (cache != null) {
 				try {
 					// check if we have a cached version
-					bytes = (byte[]) cache.get(uri.toString());
+					page = (RenderedPage) cache.get(key);
 				}
 				catch (Exception e) {
 					throw new HTTPException(500, e);
 				}
+				Long age = page == null || cacheTimeout == null ? null : getAge(cache, key);
+				if (age != null && age > cacheTimeout) {
+					// we serve the outdated version while we refresh it in the background
+					if (staleTimeout != null && age <= cacheTimeout + staleTimeout) {
+						revalidating = true;
+						metrics.staleHit();
+						refresh(key);
+					}
+					else {
+						stale = page;
+						page = null;
+					}
+				}
+				if (page == null) {
+					metrics.cacheMiss();
+				}
+				else if (!revalidating) {
+					metrics.cacheHit();
+				}
 			}
 			
-			if (bytes == null) {
+			if (page == null) {
+				// the page failed recently, we don't try again until the back-off has passed
+				RenderFailure failure = failures.getBackoff(key);
+				if (failure != null) {
+					metrics.backoffHit();
+					notification.setMessage("Render backing off for: " + uri + " -- by: " + userAgent);
+					notification.setDescription("Failed " + failure.getFailures() + " times, last: " + failure.getMessage());
+					notification.setSeverity(Severity.WARNING);
+					EAIRepositoryUtils.fireAsync(application.getRepository(), notification, this);
+					return fallback(request, failureFallback, stale, (int) Math.max(1, (failure.getRetryAfter().getTime() - new Date().getTime()) / 1000));
+				}
 				Date date = new Date();
-				// we do _not_ want to bypass stuff like the password protector if doing SSR on external request
-				// we also don't need css
-				bytes = executeAsBytes(application, request, null, client, null, false, false);
-				if (cache != null) {
-					try {
-						cache.put(uri.toString(), bytes);
-					}
-					catch (IOException e) {
-						throw new HTTPException(500, e);
-					}
+				boolean [] coalesced = new boolean[1];
+				try {
+					page = render(key, request, coalesced, true);
 				}
-				notification.setMessage("Cache miss for: " + uri + " -- by: " + userAgent);
+				catch (RejectedExecutionException e) {
+					notification.setMessage("Render rejected for: " + uri + " -- by: " + userAgent);
+					notification.setDescription(e.getMessage());
+					notification.setSeverity(Severity.ERROR);
+					EAIRepositoryUtils.fireAsync(application.getRepository(), notification, this);
+					return fallback(request, fallback, stale, retryAfter);
+				}
+				catch (HTTPException e) {
+					notification.setMessage("Render failed for: " + uri + " -- by: " + userAgent);
+					notification.setDescription(e.getMessage());
+					notification.setSeverity(Severity.ERROR);
+					EAIRepositoryUtils.fireAsync(application.getRepository(), notification, this);
+					return fallback(request, failureFallback, stale, retryAfter);
+				}
+				notification.setMessage((coalesced[0] ? "Cache miss (coalesced) for: " : "Cache miss for: ") + uri + " -- by: " + userAgent);
 				notification.setDescription("Rendering took: " + (new Date().getTime() - date.getTime()) + "ms");
 				notification.setSeverity(Severity.WARNING);
 			}
+			else if (revalidating) {
+				notification.setMessage("Stale cache hit for: " + uri + " -- by: " + userAgent);
+				notification.setSeverity(Severity.INFO);
+			}
 			else {
 				notification.setMessage("Cache hit for: " + uri + " -- by: " + userAgent);
 				notification.setSeverity(Severity.INFO);
@@ -210,12 +282,381 @@ public class Renderer implements EventHandler<HTTPRequest, HTTPResponse> {
 			
 			EAIRepositoryUtils.fireAsync(application.getRepository(), notification, this);
 			
-			// now that we have the bytes as separate, store them
-			return wrapIntoResponse(request, bytes);
+			return wrapIntoResponse(request, page, getVary());
 		}
 		return null;
 	}
 
+	/**
+	 * Renders a page for background work (jobs, warmup, crawls), this goes through the same scheduler and ongoing renders as bot requests.
+	 * If the scheduler is saturated we wait for room instead of failing, the bot requests take precedence.
+	 * If store is false, the caller is responsible for caching the result (e.g. a cache refresher).
+	 */
+	RenderedPage renderInBackground(String key, HTTPRequest request, boolean store) {
+		while (true) {
+			try {
+				return render(key, request, new boolean[1], store);
+			}
+			catch (RejectedExecutionException e) {
+				if (scheduler == null || scheduler.isShutdown()) {
+					throw e;
+				}
+				logger.debug("Scheduler saturated, retrying background render for: " + key);
+				try {
+					Thread.sleep(BACKGROUND_RETRY_INTERVAL);
+				}
+				catch (InterruptedException e1) {
+					Thread.currentThread().interrupt();
+					throw new HTTPException(503, e1);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Renders the page and caches it, if the same key is already being rendered, we wait for that result instead of starting another render
+	 */
+	private RenderedPage render(final String key, final HTTPRequest request, boolean [] coalesced, final boolean store) {
+		final Callable<RenderedPage> renderer = new Callable<RenderedPage>() {
+			@Override
+			public RenderedPage call() throws Exception {
+				RenderedPage page = renderCacheable(key, request);
+				if (cache != null && store) {
+					long started = System.currentTimeMillis();
+					cache.put(key, page);
+					metrics.phase(RenderPhase.CACHE_WRITE, System.currentTimeMillis() - started);
+				}
+				return page;
+			}
+		};
+		FutureTask<RenderedPage> task = new FutureTask<RenderedPage>(scheduler == null ? renderer : new Callable<RenderedPage>() {
+			@Override
+			public RenderedPage call() throws Exception {
+				return scheduler.execute(renderer);
+			}
+		});
+		FutureTask<RenderedPage> existing = renders.putIfAbsent(key, task);
+		if (existing == null) {
+			try {
+				task.run();
+			}
+			finally {
+				renders.remove(key, task);
+			}
+			existing = task;
+		}
+		else {
+			metrics.coalescedRender();
+			coalesced[0] = true;
+		}
+		try {
+			return existing.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HTTPException(503, e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof HTTPException) {
+				throw (HTTPException) e.getCause();
+			}
+			else if (e.getCause() instanceof RejectedExecutionException) {
+				throw (RejectedExecutionException) e.getCause();
+			}
+			throw new HTTPException(500, e.getCause());
+		}
+	}
+	
+	/**
+	 * The key under which the page for this url is cached
+	 */
+	public String getCacheKey(URI uri) {
+		return getCacheKey(uri, null, null);
+	}
+	
+	/**
+	 * The key a request for this url in this language reads, the language goes through the same resolution as on the request path (e.g. the fallback to the default language)
+	 */
+	public String getCacheKey(URI uri, String language) {
+		try {
+			return getCacheKey(newRequest(getCacheKey(uri, language, null)));
+		}
+		catch (URISyntaxException e) {
+			throw new HTTPException(500, e);
+		}
+	}
+	
+	/**
+	 * The key under which the page for this request is cached
+	 */
+	public String getCacheKey(HTTPRequest request) {
+		URI uri;
+		try {
+			uri = HTTPUtils.getURI(request, secure);
+		}
+		catch (Exception e) {
+			throw new HTTPException(500, e);
+		}
+		return getCacheKey(uri, getLanguage(request), getDevice(request));
+	}
+	
+	/**
+	 * Pages can differ per language and device, these are added to the key as a fragment so we can still derive the url from it, e.g. http://example.com/page#language=nl;device=mobile
+	 */
+	public String getCacheKey(URI uri, String language, String device) {
+		String key = normalizer == null ? uri.toString().replaceAll("#.*$", "") : normalizer.normalize(uri);
+		StringBuilder variant = new StringBuilder();
+		if (language != null) {
+			variant.append("language=").append(language);
+		}
+		if (device != null) {
+			variant.append(variant.length() > 0 ? ";" : "").append("device=").append(device);
+		}
+		return variant.length() == 0 ? key : key + "#" + variant;
+	}
+	
+	/**
+	 * The dimensions the page was rendered for, as encoded in the cache key
+	 */
+	public static Map<String, String> getVariant(String key) {
+		Map<String, String> variant = new LinkedHashMap<String, String>();
+		int index = key.indexOf('#');
+		if (index >= 0) {
+			for (String part : key.substring(index + 1).split(";")) {
+				int separator = part.indexOf('=');
+				if (separator > 0) {
+					variant.put(part.substring(0, separator), part.substring(separator + 1));
+				}
+			}
+		}
+		return variant;
+	}
+	
+	/**
+	 * Builds a request for a cache key that renders the same variant as the original request
+	 */
+	public HTTPRequest newRequest(String key) throws URISyntaxException {
+		int index = key.indexOf('#');
+		URI uri = new URI(index < 0 ? key : key.substring(0, index));
+		Map<String, String> variant = getVariant(key);
+		PlainMimeEmptyPart content = new PlainMimeEmptyPart(null, 
+			new MimeHeader("Host", uri.getHost()),
+			new MimeHeader("Content-Length", "0"));
+		String language = variant.get("language");
+		if (language != null) {
+			content.setHeader(new MimeHeader("Accept-Language", language));
+			content.setHeader(new MimeHeader("Cookie", "language=" + language));
+		}
+		String device = variant.get("device");
+		if (device != null && deviceAgents.containsKey(device)) {
+			content.setHeader(new MimeHeader("User-Agent", deviceAgents.get(device)));
+		}
+		return new DefaultHTTPRequest("GET", uri.toString(), content);
+	}
+	
+	/**
+	 * The language the page will be rendered in: the language cookie takes precedence over the accepted languages.
+	 * If the application knows which languages it supports, we map to one of those so we don't end up with a variant for every possible language.
+	 * Otherwise we only keep the primary language (e.g. "en" for "en-US") so a client can't create a new variant with every request.
+	 */
+	public String getLanguage(HTTPRequest request) {
+		if (request.getContent() == null) {
+			return null;
+		}
+		List<String> candidates = new ArrayList<String>();
+		Map<String, List<String>> cookies = HTTPUtils.getCookies(request.getContent().getHeaders());
+		if (cookies.get("language") != null) {
+			candidates.addAll(cookies.get("language"));
+		}
+		candidates.addAll(MimeUtils.getAcceptedLanguages(request.getContent().getHeaders()));
+		List<String> supported = getSupportedLanguages();
+		for (String candidate : candidates) {
+			if (candidate == null || candidate.trim().isEmpty() || candidate.trim().equals("*")) {
+				continue;
+			}
+			candidate = candidate.trim().toLowerCase();
+			if (supported == null || supported.isEmpty()) {
+				String primary = candidate.replaceAll("[-_].*$", "");
+				if (primary.matches("[a-z]{2,3}")) {
+					return primary;
+				}
+				continue;
+			}
+			for (String language : supported) {
+				if (language.equalsIgnoreCase(candidate) || candidate.startsWith(language.toLowerCase() + "-")) {
+					return language;
+				}
+			}
+		}
+		// crawlers often don't send a language, they get the default language which is also the one that is warmed up
+		return supported == null || supported.isEmpty() ? null : supported.get(0);
+	}
+	
+	List<String> getSupportedLanguages() {
+		LanguageProvider provider = application.getLanguageProvider();
+		return provider == null ? null : provider.getSupportedLanguages();
+	}
+	
+	String getDevice(HTTPRequest request) {
+		Header header = request.getContent() == null ? null : MimeUtils.getHeader("User-Agent", request.getContent().getHeaders());
+		return getDevice(header == null ? null : MimeUtils.getFullHeaderValue(header));
+	}
+	
+	private static boolean hasCookies(HTTPRequest request) {
+		if (request.getContent() == null) {
+			return false;
+		}
+		for (String name : HTTPUtils.getCookies(request.getContent().getHeaders()).keySet()) {
+			if (!name.equals("language")) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * The device class for the user agent, if no device class matches, the page is not rendered for a specific device
+	 */
+	public String getDevice(String userAgent) {
+		if (userAgent != null) {
+			for (Map.Entry<String, Pattern> device : devices.entrySet()) {
+				if (device.getValue().matcher(userAgent).find()) {
+					// we remember an agent for the device so we can refresh the page for it
+					deviceAgents.put(device.getKey(), userAgent);
+					return device.getKey();
+				}
+			}
+		}
+		return null;
+	}
+	
+	public void addDevice(String name, String regex) {
+		devices.put(name, Pattern.compile(regex));
+	}
+	
+	public Set<String> getDevices() {
+		return devices.keySet();
+	}
+	
+	/**
+	 * Renders the page without caching it and records all the resources that were requested
+	 */
+	public RenderTrace trace(HTTPRequest request, String url) {
+		RenderTrace trace = new RenderTrace(url);
+		try {
+			renderPage(request, null, null, false, false, trace);
+		}
+		catch (HTTPException e) {
+			trace.failed(e);
+		}
+		catch (RejectedExecutionException e) {
+			trace.failed(e);
+		}
+		return trace;
+	}
+	
+	static HTTPResponse wrapIntoResponse(HTTPRequest request, RenderTrace trace) {
+		byte [] bytes = trace.toString().getBytes(Charset.forName("UTF-8"));
+		return new DefaultHTTPResponse(request, 200, HTTPCodes.getMessage(200), new PlainMimeContentPart(null, IOUtils.wrap(bytes, true),
+			new MimeHeader("Content-Length", Integer.toString(bytes.length)),
+			new MimeHeader("Content-Type", "text/plain; charset=UTF-8")));
+	}
+	
+	/**
+	 * Renders a page that is meant for the cache, failures of the page itself are remembered so we can back off
+	 */
+	RenderedPage renderCacheable(String key, HTTPRequest request) {
+		RenderedPage page;
+		try {
+			// we do _not_ want to bypass stuff like the password protector if doing SSR on external request
+			// we also don't need css
+			page = renderPage(request, null, null, false, false);
+		}
+		// we are at capacity, the page itself did not fail so there is no need to back off
+		catch (RejectedExecutionException e) {
+			throw e;
+		}
+		catch (RuntimeException e) {
+			metrics.failedRender();
+			failures.failed(key, e);
+			throw e;
+		}
+		metrics.render();
+		// server errors are not cached, we prefer the fallback for those
+		if (page.getCode() >= 500) {
+			metrics.failedRender();
+			failures.failed(key, "Page rendered with status code " + page.getCode());
+			throw new HTTPException(page.getCode(), "Page rendered with status code " + page.getCode());
+		}
+		failures.succeeded(key);
+		return page;
+	}
+	
+	/**
+	 * Refreshes the cache entry in the background, this goes through the cache refresher
+	 */
+	private void refresh(final String key) {
+		// if the page failed recently, we keep serving the stale version until the back-off has passed
+		if (failures.getBackoff(key) == null && refreshing.add(key)) {
+			Callable<Void> refresher = new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					try {
+						cache.refresh(key);
+						metrics.backgroundRefresh();
+					}
+					catch (Exception e) {
+						logger.warn("Could not refresh SSR cache for: " + key, e);
+					}
+					finally {
+						refreshing.remove(key);
+					}
+					return null;
+				}
+			};
+			try {
+				if (scheduler != null) {
+					scheduler.submit(refresher);
+				}
+				else {
+					Thread thread = new Thread(new FutureTask<Void>(refresher), "renderer-refresh");
+					thread.setDaemon(true);
+					thread.start();
+				}
+			}
+			catch (RejectedExecutionException e) {
+				refreshing.remove(key);
+				logger.debug("Could not schedule refresh for: " + key);
+			}
+		}
+	}
+	
+	/**
+	 * Returns how long ago (in ms) the entry was cached, this is only known for explorable caches
+	 */
+	static Long getAge(Cache cache, String key) {
+		if (cache instanceof ExplorableCache) {
+			CacheEntry entry = ((ExplorableCache) cache).getEntry(key);
+			if (entry != null && entry.getLastModified() != null) {
+				return new Date().getTime() - entry.getLastModified().getTime();
+			}
+		}
+		return null;
+	}
+	
+	private HTTPResponse fallback(HTTPRequest request, RenderFallback fallback, RenderedPage stale, int retryAfter) {
+		switch (fallback) {
+			case STALE:
+				return stale == null ? null : wrapIntoResponse(request, stale, getVary());
+			case UNAVAILABLE:
+				return new DefaultHTTPResponse(request, 503, HTTPCodes.getMessage(503), new PlainMimeEmptyPart(null, 
+					new MimeHeader("Content-Length", "0"),
+					new MimeHeader("Retry-After", Integer.toString(retryAfter))));
+			default:
+				return null;
+		}
+	}
+	
 	public static HTTPResponse execute(WebApplication application, HTTPRequest request, Token token, HTTPClient client, String javascriptToInject, boolean setSsr, Boolean css) {
 		byte [] bytes = executeAsBytes(application, request, token, client, javascriptToInject, setSsr, css);
 		return wrapIntoResponse(request, bytes);
@@ -233,60 +674,220 @@ public class Renderer implements EventHandler<HTTPRequest, HTTPResponse> {
 		}
 	}
 	
+	/**
+	 * The response is compressed if the client supports it, the server encodes the content on the wire based on the Content-Encoding header
+	 * The content we hand over is always the identity form, otherwise it would be compressed twice
+	 */
+	static HTTPResponse wrapIntoResponse(HTTPRequest request, RenderedPage page, String vary) {
+		boolean gzip = acceptsGzip(request);
+		List<Header> headers = new ArrayList<Header>();
+		for (Map.Entry<String, String> header : page.getHeaders().entrySet()) {
+			headers.add(new MimeHeader(header.getKey(), header.getValue()));
+		}
+		headers.add(new MimeHeader("Vary", vary));
+		headers.add(new MimeHeader("ETag", getETag(page, gzip)));
+		if (page.getCreated() != null) {
+			headers.add(new MimeHeader("Last-Modified", formatDate(page.getCreated())));
+		}
+		// we can answer conditional requests from the metadata, without touching the content
+		if (page.getCode() == 200 && isNotModified(request, page, gzip)) {
+			headers.add(new MimeHeader("Content-Length", "0"));
+			return new DefaultHTTPResponse(request, 304, HTTPCodes.getMessage(304), new PlainMimeEmptyPart(null, headers.toArray(new Header[headers.size()])));
+		}
+		if (page.isEmpty()) {
+			int code = page.getCode() == 200 ? 204 : page.getCode();
+			headers.add(new MimeHeader("Content-Length", "0"));
+			return new DefaultHTTPResponse(request, code, HTTPCodes.getMessage(code), new PlainMimeEmptyPart(null, headers.toArray(new Header[headers.size()])));
+		}
+		if (!page.getHeaders().containsKey("Content-Type")) {
+			headers.add(new MimeHeader("Content-Type", "text/html"));
+		}
+		byte [] content = page.getContent();
+		// the length on the wire is only known after encoding, we leave the framing to the server
+		if (gzip) {
+			headers.add(new MimeHeader("Content-Encoding", "gzip"));
+		}
+		else {
+			headers.add(new MimeHeader("Content-Length", Integer.toString(content.length)));
+		}
+		return new DefaultHTTPResponse(request, page.getCode(), HTTPCodes.getMessage(page.getCode()), new PlainMimeContentPart(null, IOUtils.wrap(content, true),
+			headers.toArray(new Header[headers.size()])));
+	}
+	
+	/**
+	 * The request headers that select the variant we send back: the encoding, the language (cookie or accepted languages) and the user agent if we render per device
+	 */
+	String getVary() {
+		return "Accept-Encoding, Accept-Language, Cookie" + (devices.isEmpty() ? "" : ", User-Agent");
+	}
+	
+	/**
+	 * The compressed and identity responses are different representations so they get a different etag
+	 */
+	static String getETag(RenderedPage page, boolean gzip) {
+		return "\"" + page.getHash() + (gzip ? "-gzip" : "") + "\"";
+	}
+	
+	static boolean isNotModified(HTTPRequest request, RenderedPage page, boolean gzip) {
+		if (request.getContent() == null) {
+			return false;
+		}
+		Header ifNoneMatch = MimeUtils.getHeader("If-None-Match", request.getContent().getHeaders());
+		// if both are present, the etag takes precedence
+		if (ifNoneMatch != null) {
+			for (String etag : MimeUtils.getFullHeaderValue(ifNoneMatch).split(",")) {
+				etag = etag.trim().replaceFirst("^W/", "");
+				if (etag.equals("*") || etag.equals(getETag(page, gzip))) {
+					return true;
+				}
+			}
+			return false;
+		}
+		Header ifModifiedSince = MimeUtils.getHeader("If-Modified-Since", request.getContent().getHeaders());
+		if (ifModifiedSince != null && page.getCreated() != null) {
+			Date since = parseDate(MimeUtils.getFullHeaderValue(ifModifiedSince));
+			// http dates don't have millisecond precision
+			return since != null && page.getCreated().getTime() / 1000 <= since.getTime() / 1000;
+		}
+		return false;
+	}
+	
+	static String formatDate(Date date) {
+		return getDateFormatter().format(date);
+	}
+	
+	static Date parseDate(String value) {
+		try {
+			return getDateFormatter().parse(value.trim());
+		}
+		catch (ParseException e) {
+			return null;
+		}
+	}
+	
+	private static SimpleDateFormat getDateFormatter() {
+		SimpleDateFormat formatter = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		formatter.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return formatter;
+	}
+	
+	static boolean acceptsGzip(HTTPRequest request) {
+		Header header = request.getContent() == null ? null : MimeUtils.getHeader("Accept-Encoding", request.getContent().getHeaders());
+		if (header != null) {
+			for (String part : MimeUtils.getFullHeaderValue(header).split(",")) {
+				String [] values = part.split(";");
+				String encoding = values[0].trim();
+				if (encoding.equalsIgnoreCase("gzip") || encoding.equals("*")) {
+					// an explicit q=0 means it is not acceptable
+					return values.length < 2 || !values[1].trim().matches("(?i)q=0(\\.0*)?");
+				}
+			}
+		}
+		return false;
+	}
+	
 	static byte [] executeAsBytes(WebApplication application, HTTPRequest request, Token token, HTTPClient client, String javascriptToInject, boolean setSsr, Boolean css) {
+		return new Renderer(application, client, null).renderAsBytes(request, token, javascriptToInject, setSsr, css);
+	}
+	
+	byte [] renderAsBytes(HTTPRequest request, Token token, String javascriptToInject, boolean setSsr, Boolean css) {
+		return renderPage(request, token, javascriptToInject, setSsr, css).getContent();
+	}
+	
+	RenderedPage renderPage(HTTPRequest request, Token token, String javascriptToInject, boolean setSsr, Boolean css) {
+		return renderPage(request, token, javascriptToInject, setSsr, css, null);
+	}
+	
+	/**
+	 * If a trace is given, all the resources requested during the render are recorded in it
+	 */
+	RenderedPage renderPage(HTTPRequest request, Token token, String javascriptToInject, boolean setSsr, Boolean css, RenderTrace trace) {
+		long started = System.currentTimeMillis();
 		try {
-			WebConnectionImpl webConnection = new WebConnectionImpl(application.getDispatcher(), token, client, new RepositoryExceptionFormatter(application.getConfig().getVirtualHost().getServer()));
-			webConnection.setJavascriptToInject(javascriptToInject);
-			webConnection.setSsr(setSsr);
-			BrowserVersion browserVersion = BrowserVersion.BEST_SUPPORTED;
-			if (!browserVersion.getUserAgent().contains("Nabu-Renderer")) {
-				browserVersion.setUserAgent(browserVersion.getUserAgent() + " Nabu-Renderer/1.0");
-			}
-			// the initial request will get the headers we want, but any requests that follow from that (e.g. to fetch javascript, css...) will use "default" header stuffs
-			List<String> acceptedLanguages = MimeUtils.getAcceptedLanguages(request.getContent().getHeaders());
-			if (acceptedLanguages.size() > 0) {
-				browserVersion.setBrowserLanguage(acceptedLanguages.get(0));
-			}
-			final WebClient webClient = new WebClient(browserVersion, webConnection);
-			
-			// "should" optimize the javascript code but doesn't...not really
-//			JavaScriptEngine sriptEngine = (JavaScriptEngine) webClient.getJavaScriptEngine();
-//			HtmlUnitContextFactory factory = sriptEngine.getContextFactory();
-//			Context context = factory.enterContext();
-//			context.setOptimizationLevel(9);
-			webClient.setAjaxController(new NicelyResynchronizingAjaxController());
-			webClient.setCssErrorHandler(new SilentCssErrorHandler());
-			webClient.getOptions().setCssEnabled(css == null || css);
-			webClient.getOptions().setJavaScriptEnabled(true);
-			webClient.getOptions().setPopupBlockerEnabled(true);
-			webClient.getOptions().setTimeout(30000);
-			webClient.getOptions().setThrowExceptionOnFailingStatusCode(false);
-			webClient.getOptions().setThrowExceptionOnScriptError(true);
-			webClient.getOptions().setPrintContentOnFailingStatusCode(true);
-			webClient.getOptions().setDownloadImages(false);
-			
+			WebConnectionImpl webConnection = newConnection(token, javascriptToInject, setSsr);
+			webConnection.setTrace(trace);
+			webConnection.setFilter(filter);
+			String language = getLanguage(request);
+			webConnection.setLanguage(language);
+			// a kept shell was loaded for a specific device, so it is part of the pool key
+			String device = getDevice(request);
+			// pooled clients are shared between renders, we don't want anything token-specific to linger in them
+			boolean pooled = pool != null && token == null;
+			final WebClient webClient = pooled ? pool.acquire(language, device, css, webConnection) : WebClientPool.newWebClient(language, css, webConnection, scriptCache);
+			metrics.phase(RenderPhase.ACQUIRE, System.currentTimeMillis() - started);
+			if (webClient.getCache() instanceof ReportingCache) {
+				((ReportingCache) webClient.getCache()).setConnection(webConnection);
+				webConnection.setClientCache((ReportingCache) webClient.getCache());
+			}
+			if (webClient.getOptions().getTimeout() > 0) {
+				webConnection.setTimeout(webClient.getOptions().getTimeout());
+			}
+			if (webClient.getJavaScriptEngine() instanceof CachingJavaScriptEngine) {
+				((CachingJavaScriptEngine) webClient.getJavaScriptEngine()).resetSavedCompileTime();
+			}
+			// injected javascript is only added on the initial load so we can't reuse a shell for that
+			// the shell never sees the cookies of the request, so we only use it for requests without any (apart from the language)
+			boolean useShell = pooled && warmShell && javascriptToInject == null && !hasCookies(request);
+			boolean success = false;
 			try {
 				// we can expand later to support body posts etc if necessary
-				boolean secure = application.getConfig().getVirtualHost() != null && application.getConfig().getVirtualHost().getServer() != null && application.getConfig().getVirtualHost().getServer().isSecure();
 				URI uri = HTTPUtils.getURI(request, secure);
-				WebRequest rendererRequest = new WebRequest(uri.toURL());
-				if (request.getContent() != null) {
-					for (Header header : request.getContent().getHeaders()) {
-						rendererRequest.setAdditionalHeader(header.getName(), MimeUtils.getFullHeaderValue(header));
-					}
+				WebRequest rendererRequest = newWebRequest(uri.toURL(), request, language);
+				webConnection.setDocumentUrl(uri.toURL().toString());
+				long loadStarted = System.currentTimeMillis();
+				long fetchStarted = webConnection.getFetchTime();
+				Object page = null;
+				if (useShell) {
+					page = navigate(webClient, uri);
+				}
+				// the web response of a shell belongs to its original load, not to this url
+				boolean navigated = page != null;
+				if (page == null) {
+					logger.info("Loading page: " + uri);
+					page = webClient.getPage(rendererRequest);
 				}
-				logger.info("Loading page: " + uri);
-				Object page = webClient.getPage(rendererRequest);
 //				logger.debug("Initializing page: " + uri);
 //				page.initialize();
+				// whatever time we did not spend waiting for a fetch, was mostly spent executing scripts
+				// concurrent fetches (async calls, prefetches) overlap so we can't subtract the sum of their durations
+				long loadTime = System.currentTimeMillis() - loadStarted;
+				metrics.phase(RenderPhase.DOCUMENT, webConnection.getDocumentTime());
+				metrics.phase(RenderPhase.SCRIPT, Math.max(0, loadTime - (webConnection.getFetchTime() - fetchStarted)));
+				// after navigating, only the prerender meta tags can change the status code
+				int code = !navigated && page instanceof Page ? ((Page) page).getWebResponse().getStatusCode() : 200;
+				Map<String, String> headers = new LinkedHashMap<String, String>();
+				// htmlunit follows redirects, but we want to send the redirect itself to the bot
+				WebResponse documentResponse = webConnection.getDocumentResponse();
+				if (documentResponse != null && documentResponse.getStatusCode() >= 300 && documentResponse.getStatusCode() < 400 && documentResponse.getResponseHeaderValue("Location") != null) {
+					headers.put("Location", documentResponse.getResponseHeaderValue("Location"));
+					logger.debug("Page redirects to: " + headers.get("Location"));
+					success = true;
+					return new RenderedPage(documentResponse.getStatusCode(), headers, new byte[0]);
+				}
+				if (!navigated && page instanceof Page) {
+					String cacheControl = ((Page) page).getWebResponse().getResponseHeaderValue("Cache-Control");
+					if (cacheControl != null) {
+						headers.put("Cache-Control", cacheControl);
+					}
+				}
 				// waiting for background javascript tasks to finish...
-				logger.debug("Waiting for background tasks...");
-				webClient.waitForBackgroundJavaScript(10000);
-				logger.debug("Getting page as xml");
+				if (page instanceof HtmlPage) {
+					logger.debug("Waiting for page to settle...");
+					long settleTime = new SettleDetector(settleQuietPeriod, settleTimeout, readySignal).settle((HtmlPage) page, webConnection);
+					logger.debug("Page settled in " + settleTime + "ms");
+					metrics.settled(settleTime);
+					metrics.phase(RenderPhase.SETTLE, settleTime);
+				}
+				logger.debug("Serializing page");
+				long serializeStarted = System.currentTimeMillis();
 				byte [] bytes = null;
 				String content = null;
+				List<String> links = null;
 				if (page instanceof HtmlPage) {
-					content = ((HtmlPage) page).asXml();
+					code = getPrerenderMetadata((HtmlPage) page, code, headers);
+					links = getLinks((HtmlPage) page);
+					headers.put("Content-Type", "text/html");
+					bytes = HtmlSerializer.serialize((HtmlPage) page);
 				}
 				else if (page instanceof TextPage) {
 					content = ((TextPage) page).getContent();
@@ -314,33 +915,353 @@ public class Renderer implements EventHandler<HTTPRequest, HTTPResponse> {
 					content = content.replaceAll("//[\\s]*\\]\\]>", "");
 					bytes = content.getBytes("UTF-8");
 				}
+				metrics.phase(RenderPhase.SERIALIZE, System.currentTimeMillis() - serializeStarted);
+				metrics.phase(RenderPhase.INTERNAL_RESOURCES, webConnection.getInternalTime());
+				metrics.phase(RenderPhase.EXTERNAL_RESOURCES, webConnection.getExternalTime());
+				metrics.externalRequests(webConnection.getExternalRequests(), webConnection.getExternalTime());
+				if (webConnection.getBlocked() > 0) {
+					logger.debug("Blocked " + webConnection.getBlocked() + " resources");
+					metrics.blocked(webConnection.getBlocked());
+				}
+				metrics.phase(RenderPhase.TOTAL, System.currentTimeMillis() - started);
 				logger.debug("Received: " + bytes.length + " bytes as content");
-				return bytes;
+				if (webClient.getJavaScriptEngine() instanceof CachingJavaScriptEngine) {
+					long savedCompileTime = ((CachingJavaScriptEngine) webClient.getJavaScriptEngine()).getSavedCompileTime();
+					logger.debug("Saved " + savedCompileTime + "ms of script compilation");
+					metrics.savedCompileTime(savedCompileTime);
+				}
+				if (!headers.containsKey("Content-Type") && page instanceof Page && ((Page) page).getWebResponse().getResponseHeaderValue("Content-Type") != null) {
+					headers.put("Content-Type", ((Page) page).getWebResponse().getResponseHeaderValue("Content-Type"));
+				}
+				success = true;
+				// "no http response" is reported as 0
+				RenderedPage rendered = new RenderedPage(code < 100 ? 200 : code, headers, bytes);
+				rendered.setLinks(links);
+				return rendered;
 			}
 			finally {
-				webClient.close();
+				webConnection.cancelPrefetches();
+				if (!pooled) {
+					webClient.close();
+				}
+				// if the render failed, we don't know in what state the client is
+				else if (success) {
+					pool.release(language, device, css, webClient, useShell);
+				}
+				else {
+					pool.discard(webClient);
+				}
 			}
 		}
 		catch (HTTPException e) {
 			logger.error("HTTP Exception during rendering", e);
 			throw e;
 		}
+		// no render client available, this is not a failure of the page itself
+		catch (RejectedExecutionException e) {
+			throw e;
+		}
 		catch (Throwable e) {
 			logger.error("Unknown Exception during rendering", e);
 			throw new HTTPException(500, e);
 		}
+		finally {
+			if (trace != null) {
+				trace.stop();
+			}
+		}
+	}
+	
+	/**
+	 * If the client still has the application loaded, we use the client-side router to go to the new url instead of loading everything again
+	 */
+	private HtmlPage navigate(WebClient webClient, URI uri) {
+		Page current = webClient.getCurrentWindow() == null ? null : webClient.getCurrentWindow().getEnclosedPage();
+		if (current instanceof HtmlPage && isSameOrigin(current.getUrl(), uri)) {
+			Integer count = shellRenders.get(webClient);
+			// applications tend to accumulate state over time, we reload every now and then
+			if (count == null || count < MAX_SHELL_RENDERS) {
+				try {
+					logger.info("Navigating to page: " + uri);
+					// the metadata of the previous route should not end up in this one
+					for (DomElement meta : new ArrayList<DomElement>(((HtmlPage) current).getElementsByTagName("meta"))) {
+						String name = meta.getAttribute("name");
+						if ("prerender-status-code".equalsIgnoreCase(name) || "prerender-header".equalsIgnoreCase(name)) {
+							meta.remove();
+						}
+					}
+					((HtmlPage) current).executeJavaScript(shellRouteScript.replace("${url}", "'" + uri.toString().replace("\\", "\\\\").replace("'", "\\'") + "'"));
+					shellRenders.put(webClient, count == null ? 1 : count + 1);
+					return (HtmlPage) current;
+				}
+				catch (Exception e) {
+					logger.warn("Could not navigate to " + uri + " in the existing page, reloading", e);
+				}
+			}
+		}
+		shellRenders.remove(webClient);
+		return null;
+	}
+	
+	private static boolean isSameOrigin(URL url, URI uri) {
+		return url != null && url.getHost() != null && url.getHost().equalsIgnoreCase(uri.getHost())
+			&& url.getProtocol().equalsIgnoreCase(uri.getScheme())
+			&& (url.getPort() < 0 ? url.getDefaultPort() : url.getPort()) == (uri.getPort() < 0 ? ("https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80) : uri.getPort());
+	}
+	
+	/**
+	 * Single page applications can't set the status code or headers themselves, they can use the prerender meta tags to do so:
+	 * <meta name="prerender-status-code" content="404"> and <meta name="prerender-header" content="Location: https://example.com">
+	 */
+	private static int getPrerenderMetadata(HtmlPage page, int code, Map<String, String> headers) {
+		for (DomElement meta : page.getElementsByTagName("meta")) {
+			String name = meta.getAttribute("name");
+			String content = meta.getAttribute("content");
+			if ("prerender-status-code".equalsIgnoreCase(name) && content != null && content.trim().matches("[0-9]{3}")) {
+				code = Integer.parseInt(content.trim());
+			}
+			else if ("prerender-header".equalsIgnoreCase(name) && content != null && content.indexOf(':') > 0) {
+				headers.put(content.substring(0, content.indexOf(':')).trim(), content.substring(content.indexOf(':') + 1).trim());
+			}
+		}
+		return code;
+	}
+	
+	/**
+	 * The absolute urls of all the links in the rendered page
+	 */
+	private static List<String> getLinks(HtmlPage page) {
+		List<String> links = new ArrayList<String>();
+		for (HtmlAnchor anchor : page.getAnchors()) {
+			String href = anchor.getHrefAttribute().trim();
+			if (!href.isEmpty() && !href.startsWith("#") && !href.matches("^(?i)(javascript|mailto|tel):.*")) {
+				try {
+					links.add(page.getFullyQualifiedUrl(href).toString());
+				}
+				catch (MalformedURLException e) {
+					logger.debug("Ignoring invalid link: " + href);
+				}
+			}
+		}
+		return links;
+	}
+	
+	/**
+	 * The request for the document, with the headers of the original request.
+	 * Conditional and range headers are not forwarded: htmlunit copies the headers of the document to every resource it fetches and a 304 or partial response would end up in the rendered page.
+	 */
+	static WebRequest newWebRequest(URL url, HTTPRequest request, String language) {
+		WebRequest rendererRequest = new WebRequest(url);
+		if (request.getContent() != null) {
+			for (Header header : request.getContent().getHeaders()) {
+				if (!UNFORWARDED_HEADERS.contains(header.getName().toLowerCase())) {
+					rendererRequest.setAdditionalHeader(header.getName(), MimeUtils.getFullHeaderValue(header));
+				}
+			}
+		}
+		// if the language was not explicitly chosen, we make sure the application renders the language we cache the page for
+		if (language != null && (request.getContent() == null || HTTPUtils.getCookies(request.getContent().getHeaders()).get("language") == null)) {
+			String cookie = null;
+			for (String name : new ArrayList<String>(rendererRequest.getAdditionalHeaders().keySet())) {
+				if (name.equalsIgnoreCase("Cookie")) {
+					cookie = rendererRequest.getAdditionalHeaders().get(name);
+					rendererRequest.removeAdditionalHeader(name);
+				}
+			}
+			rendererRequest.setAdditionalHeader("Cookie", (cookie == null || cookie.trim().isEmpty() ? "" : cookie + "; ") + "language=" + language);
+		}
+		return rendererRequest;
+	}
+	
+	WebConnectionImpl newConnection(Token token, String javascriptToInject, boolean setSsr) {
+		WebConnectionImpl webConnection = new WebConnectionImpl(application.getDispatcher(), token, client, new RepositoryExceptionFormatter(application.getConfig().getVirtualHost().getServer()));
+		webConnection.setJavascriptToInject(javascriptToInject);
+		webConnection.setSsr(setSsr);
+		webConnection.setExternalCache(externalCache);
+		webConnection.setStaticCache(staticCache);
+		webConnection.setPrefetcher(prefetcher);
+		return webConnection;
+	}
+	
+	/**
+	 * Fills the client pool (if any) with clients for the options used by bot requests
+	 */
+	public void prewarm() {
+		if (pool != null) {
+			pool.prewarm(null, null, false, newConnection(null, null, false));
+		}
 	}
 
-	public List<String> getAgents() {
-		return agents;
+	public boolean isSecure() {
+		return secure;
+	}
+
+	public UserAgentClassifier getClassifier() {
+		return classifier;
+	}
+
+	public void setClassifier(UserAgentClassifier classifier) {
+		this.classifier = classifier;
 	}
 
 	public String getPathRegex() {
-		return pathRegex;
+		return pathRegex == null ? null : pathRegex.pattern();
 	}
 
 	public void setPathRegex(String pathRegex) {
-		this.pathRegex = pathRegex;
+		this.pathRegex = pathRegex == null ? null : Pattern.compile(pathRegex);
+	}
+
+	public RendererMetrics getMetrics() {
+		return metrics;
+	}
+
+	public RenderScheduler getScheduler() {
+		return scheduler;
+	}
+
+	public void setScheduler(RenderScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	public Long getCacheTimeout() {
+		return cacheTimeout;
+	}
+
+	public void setCacheTimeout(Long cacheTimeout) {
+		this.cacheTimeout = cacheTimeout;
+	}
+
+	public Long getStaleTimeout() {
+		return staleTimeout;
+	}
+
+	public void setStaleTimeout(Long staleTimeout) {
+		this.staleTimeout = staleTimeout;
+	}
+
+	public boolean isWarmShell() {
+		return warmShell;
+	}
+
+	public void setWarmShell(boolean warmShell) {
+		this.warmShell = warmShell;
+	}
+
+	public String getShellRouteScript() {
+		return shellRouteScript;
+	}
+
+	public void setShellRouteScript(String shellRouteScript) {
+		this.shellRouteScript = shellRouteScript == null ? DEFAULT_SHELL_ROUTE_SCRIPT : shellRouteScript;
+	}
+
+	public long getSettleQuietPeriod() {
+		return settleQuietPeriod;
+	}
+
+	public void setSettleQuietPeriod(long settleQuietPeriod) {
+		this.settleQuietPeriod = settleQuietPeriod;
+	}
+
+	public long getSettleTimeout() {
+		return settleTimeout;
+	}
+
+	public void setSettleTimeout(long settleTimeout) {
+		this.settleTimeout = settleTimeout;
+	}
+
+	public String getReadySignal() {
+		return readySignal;
+	}
+
+	public void setReadySignal(String readySignal) {
+		this.readySignal = readySignal;
+	}
+
+	public RenderFallback getFallback() {
+		return fallback;
+	}
+
+	public void setFallback(RenderFallback fallback) {
+		this.fallback = fallback;
+	}
+
+	public RenderFallback getFailureFallback() {
+		return failureFallback;
+	}
+
+	public void setFailureFallback(RenderFallback failureFallback) {
+		this.failureFallback = failureFallback;
+	}
+
+	public ExecutorService getPrefetcher() {
+		return prefetcher;
+	}
+
+	public void setPrefetcher(ExecutorService prefetcher) {
+		this.prefetcher = prefetcher;
+	}
+
+	public StaticResourceCache getStaticCache() {
+		return staticCache;
+	}
+
+	public void setStaticCache(StaticResourceCache staticCache) {
+		this.staticCache = staticCache;
+	}
+
+	public ExternalResourceCache getExternalCache() {
+		return externalCache;
+	}
+
+	public void setExternalCache(ExternalResourceCache externalCache) {
+		this.externalCache = externalCache;
+	}
+
+	public ResourceFilter getFilter() {
+		return filter;
+	}
+
+	public void setFilter(ResourceFilter filter) {
+		this.filter = filter;
+	}
+
+	public CacheKeyNormalizer getNormalizer() {
+		return normalizer;
+	}
+
+	public void setNormalizer(CacheKeyNormalizer normalizer) {
+		this.normalizer = normalizer;
+	}
+
+	public RenderFailures getFailures() {
+		return failures;
+	}
+
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	public void setRetryAfter(int retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	public ScriptCache getScriptCache() {
+		return scriptCache;
+	}
+
+	public void setScriptCache(ScriptCache scriptCache) {
+		this.scriptCache = scriptCache;
+	}
+
+	public WebClientPool getPool() {
+		return pool;
+	}
+
+	public void setPool(WebClientPool pool) {
+		this.pool = pool;
 	}
 	
 }
@@ -17,20 +17,34 @@
 
 package be.nabu.eai.module.http.server.renderer;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nabu.protocols.http.client.Services;
+import be.nabu.eai.module.http.virtual.VirtualHostArtifact;
 import be.nabu.eai.module.web.application.WebApplication;
 import be.nabu.eai.module.web.application.WebFragment;
 import be.nabu.eai.module.web.application.WebFragmentPriority;
@@ -43,22 +57,31 @@ import be.nabu.libs.cache.api.Cache;
 import be.nabu.libs.cache.api.CacheEntry;
 import be.nabu.libs.cache.api.CacheRefresher;
 import be.nabu.libs.cache.api.ExplorableCache;
-import be.nabu.libs.cache.impl.ByteSerializer;
 import be.nabu.libs.cache.impl.StringSerializer;
 import be.nabu.libs.events.api.EventSubscription;
 import be.nabu.libs.http.api.HTTPRequest;
 import be.nabu.libs.http.api.HTTPResponse;
 import be.nabu.libs.http.api.client.HTTPClient;
-import be.nabu.libs.http.core.DefaultHTTPRequest;
 import be.nabu.libs.resources.api.ResourceContainer;
-import be.nabu.utils.mime.impl.MimeHeader;
-import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
 
 public class RendererArtifact extends JAXBArtifact<RendererConfiguration> implements WebFragment {
 
+	private static final int MAX_JOBS = 100;
+	private volatile HTTPClient httpClient;
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 	private Map<String, EventSubscription<?, ?>> subscriptions = new HashMap<String, EventSubscription<?, ?>>();
 	private Map<String, Cache> caches = new HashMap<String, Cache>();
+	private Map<String, Renderer> renderers = new HashMap<String, Renderer>();
+	private Map<String, CacheWarmer> warmers = new HashMap<String, CacheWarmer>();
+	// recent render jobs so they can be polled
+	private Map<String, RenderJob> jobs = Collections.synchronizedMap(new LinkedHashMap<String, RenderJob>() {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, RenderJob> eldest) {
+			return size() > MAX_JOBS;
+		}
+	});
 	
 	public RendererArtifact(String id, ResourceContainer<?> directory, Repository repository) {
 		super(id, directory, repository, "renderer.xml", RendererConfiguration.class);
@@ -72,50 +95,154 @@ public class RendererArtifact extends JAXBArtifact<RendererConfiguration> implem
 		if (EAIResourceRepository.isDevelopment()) {
 			renderer.setPathRegex(".*\\?.*\\$prerender");
 		}
-		if (getConfig().getAgents() != null) {
-			renderer.getAgents().addAll(getConfig().getAgents());
+		renderer.setClassifier(new UserAgentClassifier(getConfig().getAgents()));
+		renderer.setNormalizer(newNormalizer(artifact));
+		renderer.setFilter(newFilter());
+		long externalCacheSize = getConfig().getExternalCacheSize() == null ? 20l * 1024 * 1024 : getConfig().getExternalCacheSize();
+		if (externalCacheSize > 0) {
+			long externalCacheDiskSize = getConfig().getExternalCacheDiskSize() == null ? 200l * 1024 * 1024 : getConfig().getExternalCacheDiskSize();
+			renderer.setExternalCache(new ExternalResourceCache(externalCacheSize, getConfig().getExternalCacheDirectory() == null ? null : new File(getConfig().getExternalCacheDirectory()), externalCacheDiskSize));
+		}
+		if (getConfig().getDevices() != null) {
+			for (String device : getConfig().getDevices()) {
+				int index = device == null ? -1 : device.indexOf('=');
+				if (index > 0) {
+					renderer.addDevice(device.substring(0, index).trim(), device.substring(index + 1).trim());
+				}
+			}
+		}
+		// a new script cache on every start, it is only valid for the current deployment of the application
+		long scriptCacheSize = getConfig().getScriptCacheSize() == null ? 50l * 1024 * 1024 : getConfig().getScriptCacheSize();
+		if (scriptCacheSize > 0) {
+			renderer.setScriptCache(new ScriptCache(scriptCacheSize));
+		}
+		// same for the static resources, a reload of the application might change them
+		long staticCacheSize = getConfig().getStaticCacheSize() == null ? 20l * 1024 * 1024 : getConfig().getStaticCacheSize();
+		if (staticCacheSize > 0) {
+			renderer.setStaticCache(new StaticResourceCache(staticCacheSize));
+		}
+		// fetching resources is mostly waiting, so we can have more of them than we have processors
+		int prefetchConcurrency = getConfig().getPrefetchConcurrency() == null ? 4 * Runtime.getRuntime().availableProcessors() : getConfig().getPrefetchConcurrency();
+		if (prefetchConcurrency > 0) {
+			renderer.setPrefetcher(newPrefetcher(artifact.getId(), prefetchConcurrency));
+		}
+		int maxClientPoolSize = getConfig().getMaxClientPoolSize() == null ? Runtime.getRuntime().availableProcessors() : getConfig().getMaxClientPoolSize();
+		if (maxClientPoolSize > 0) {
+			WebClientPool pool = new WebClientPool(getConfig().getMinClientPoolSize() == null ? 1 : getConfig().getMinClientPoolSize(), maxClientPoolSize);
+			pool.setScriptCache(renderer.getScriptCache());
+			renderer.setPool(pool);
+		}
+		int renderConcurrency = getConfig().getRenderConcurrency() == null ? Runtime.getRuntime().availableProcessors() : getConfig().getRenderConcurrency();
+		if (renderConcurrency > 0) {
+			long queueTimeout = getConfig().getRenderQueueTimeout() == null ? 10000 : getConfig().getRenderQueueTimeout();
+			renderer.setScheduler(new RenderScheduler(artifact.getId(), renderConcurrency, getConfig().getRenderQueueSize() == null ? 50 : getConfig().getRenderQueueSize(), queueTimeout, renderer.getMetrics()));
+			renderer.setRetryAfter((int) Math.max(1, queueTimeout / 1000));
+		}
+		renderer.setWarmShell(getConfig().isWarmShell());
+		renderer.setShellRouteScript(getConfig().getShellRouteScript());
+		if (getConfig().getSettleQuietPeriod() != null) {
+			renderer.setSettleQuietPeriod(getConfig().getSettleQuietPeriod());
+		}
+		if (getConfig().getSettleTimeout() != null) {
+			renderer.setSettleTimeout(getConfig().getSettleTimeout());
+		}
+		renderer.setReadySignal(getConfig().getReadySignal());
+		renderer.setCacheTimeout(getConfig().getCacheTimeout());
+		renderer.setStaleTimeout(getConfig().getStaleTimeout());
+		if (getConfig().getRenderFallback() != null) {
+			renderer.setFallback(getConfig().getRenderFallback());
+		}
+		if (getConfig().getFailureFallback() != null) {
+			renderer.setFailureFallback(getConfig().getFailureFallback());
+		}
+		if (getConfig().getFailureBackoff() != null) {
+			renderer.getFailures().setBackoff(getConfig().getFailureBackoff());
+		}
+		if (getConfig().getMaxFailureBackoff() != null) {
+			renderer.getFailures().setMaxBackoff(getConfig().getMaxFailureBackoff());
+		}
+		synchronized(renderers) {
+			renderers.put(artifact.getId(), renderer);
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(renderer.getMetrics(), getObjectName(artifact));
+		}
+		catch (Exception e) {
+			logger.warn("Could not register renderer metrics for: " + artifact.getId(), e);
 		}
 		EventSubscription<HTTPRequest, HTTPResponse> subscription = artifact.getDispatcher().subscribe(HTTPRequest.class, renderer);
 		subscription.promote();
 		subscriptions.put(getKey(artifact, path), subscription);
 		
+		// no sense in prewarming clients on a development server
+		if (!EAIResourceRepository.isDevelopment() && artifact.getConfig().getVirtualHost() != null) {
+			renderer.prewarm();
+		}
+		
 		// no sense in warming up a development server
 		if (!EAIResourceRepository.isDevelopment() && getConfig().isWarmup() && artifact.getConfig().getVirtualHost() != null) {
-			logger.info("Warming up application " + artifact.getId() + "...");
-			Date date = new Date();
+			CacheWarmer warmer = new CacheWarmer(renderer, getCache(artifact), artifact.getConfig().getVirtualHost().getConfig().getHost());
+			if (getConfig().getWarmupConcurrency() != null) {
+				warmer.setConcurrency(getConfig().getWarmupConcurrency());
+			}
+			warmer.setTimeout(getConfig().getWarmupTimeout());
+			List<String> paths = new ArrayList<String>();
+			paths.add(artifact.getServerPath());
+			if (getConfig().getWarmupUrls() != null) {
+				paths.addAll(getConfig().getWarmupUrls());
+			}
+			List<String> languages = new ArrayList<String>();
 			LanguageProvider languageProvider = artifact.getLanguageProvider();
 			if (languageProvider != null && languageProvider.getSupportedLanguages() != null) {
-				for (String language : languageProvider.getSupportedLanguages()) {
-					logger.info("Warming up language: " + language);
-					load(artifact, client, language);
-				}
+				languages.addAll(languageProvider.getSupportedLanguages());
 			}
 			else {
 				logger.info("No language provider found, warming up without language");
-				load(artifact, client, null);
+				languages.add(null);
+			}
+			synchronized(warmers) {
+				warmers.put(artifact.getId(), warmer);
+			}
+			// reading the sitemap is part of the warmup, so it does not delay the start when we warm up in the background
+			if (getConfig().isWarmupInBackground()) {
+				warmer.start(paths, getConfig().getSitemap(), languages);
+			}
+			else {
+				warmer.warmup(paths, getConfig().getSitemap(), languages);
 			}
-			logger.info("Application " + artifact.getId() + " warmed up in " + ((new Date().getTime() - date.getTime()) / 1000.0) + "s");
 		}
 	}
 
-	private HTTPClient getHttpClient() {
-		try {
-			return Services.newClient(getConfig().getHttpClient());
-		}
-		catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+	private ExecutorService newPrefetcher(final String name, int concurrency) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(concurrency * 10), new ThreadFactory() {
+			private AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "renderer-prefetch-" + name + "-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// no need to keep the threads around when we are not rendering
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
 	}
 
-	private void load(WebApplication artifact, HTTPClient client, String language) throws IOException {
-		String host = artifact.getConfig().getVirtualHost().getConfig().getHost();
-		PlainMimeEmptyPart content = new PlainMimeEmptyPart(null, 
-			new MimeHeader("Content-Length", "0"),
-			new MimeHeader("Host", host == null ? "localhost" : host));
-		if (language != null) {
-			content.setHeader(new MimeHeader("Cookie", "language=" + language));
+	// the client is shared by all the renders of this renderer
+	private HTTPClient getHttpClient() {
+		if (httpClient == null) {
+			synchronized(this) {
+				if (httpClient == null) {
+					try {
+						httpClient = Services.newClient(getConfig().getHttpClient());
+					}
+					catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}
 		}
-		Renderer.execute(artifact, new DefaultHTTPRequest("GET", artifact.getServerPath(), content), null, client, null, true, false);
+		return httpClient;
 	}
 
 	@Override
@@ -129,6 +256,46 @@ public class RendererArtifact extends JAXBArtifact<RendererConfiguration> implem
 				}
 			}
 		}
+		if (renderers.containsKey(artifact.getId())) {
+			synchronized(renderers) {
+				Renderer renderer = renderers.remove(artifact.getId());
+				if (renderer != null && renderer.getScheduler() != null) {
+					renderer.getScheduler().shutdown();
+				}
+				if (renderer != null && renderer.getPool() != null) {
+					renderer.getPool().close();
+				}
+				if (renderer != null && renderer.getScriptCache() != null) {
+					renderer.getScriptCache().clear();
+				}
+				if (renderer != null && renderer.getStaticCache() != null) {
+					renderer.getStaticCache().clear();
+				}
+				if (renderer != null && renderer.getPrefetcher() != null) {
+					renderer.getPrefetcher().shutdownNow();
+				}
+				// only the memory is cleared, the resources on disk survive the restart
+				if (renderer != null && renderer.getExternalCache() != null) {
+					renderer.getExternalCache().clear();
+				}
+			}
+		}
+		try {
+			if (ManagementFactory.getPlatformMBeanServer().isRegistered(getObjectName(artifact))) {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(getObjectName(artifact));
+			}
+		}
+		catch (Exception e) {
+			logger.warn("Could not unregister renderer metrics for: " + artifact.getId(), e);
+		}
+		if (warmers.containsKey(artifact.getId())) {
+			synchronized(warmers) {
+				CacheWarmer warmer = warmers.remove(artifact.getId());
+				if (warmer != null) {
+					warmer.stop();
+				}
+			}
+		}
 		// we currently don't clear the cache on removal, we generally want persistent caches (if at all possible)
 		if (caches.containsKey(key)) {
 			synchronized(caches) {
@@ -149,6 +316,10 @@ public class RendererArtifact extends JAXBArtifact<RendererConfiguration> implem
 		return subscriptions.containsKey(getKey(artifact, path));
 	}
 
+	private ObjectName getObjectName(WebApplication artifact) throws MalformedObjectNameException {
+		return new ObjectName("be.nabu.eai.module.http.server.renderer:type=Renderer,renderer=" + ObjectName.quote(getId()) + ",application=" + ObjectName.quote(artifact.getId()));
+	}
+	
 	private String getKey(WebApplication artifact, String path) {
 		return artifact.getId() + ":" + path;
 	}
@@ -165,8 +336,7 @@ public class RendererArtifact extends JAXBArtifact<RendererConfiguration> implem
 						@Override
 						public Object refresh(Object key) throws IOException {
 							try {
-								URI uri = new URI(key.toString());
-								return calculateCache(application, uri);
+								return calculateCache(application, key.toString());
 							}
 							catch (URISyntaxException e) {
 								logger.error("Could not refresh cache for: " + key, e);
@@ -174,7 +344,7 @@ public class RendererArtifact extends JAXBArtifact<RendererConfiguration> implem
 							return null;
 						}
 					};
-					caches.put(application.getId(), getConfig().getCacheProvider().create(getId(), 0, 0, new StringSerializer(Charset.forName("UTF-8")), new ByteSerializer(), refresher, null));
+					caches.put(application.getId(), getConfig().getCacheProvider().create(getId(), 0, 0, new StringSerializer(Charset.forName("UTF-8")), new RenderedPageSerializer(), refresher, null));
 				}
 			}
 		}
@@ -183,12 +353,13 @@ public class RendererArtifact extends JAXBArtifact<RendererConfiguration> implem
 	
 	protected boolean isCached(WebApplication application, URI url) {
 		Cache cache = getCache(application);
+		String key = getRenderer(application).getCacheKey(url, null);
 		if (cache instanceof ExplorableCache) {
-			return ((ExplorableCache) cache).getEntry(url.toString()) != null;
+			return ((ExplorableCache) cache).getEntry(key) != null;
 		}
 		else if (cache != null) {
 			try {
-				return cache.get(url.toString()) != null;
+				return cache.get(key) != null;
 			}
 			catch (IOException e) {
 				return false;
@@ -198,44 +369,186 @@ public class RendererArtifact extends JAXBArtifact<RendererConfiguration> implem
 	}
 	
 	public void cache(WebApplication application, URI url, Date lastModified) {
-		Cache cache = getCache(application);
+		cache(application, url, null, lastModified);
+	}
+	
+	public void cache(WebApplication application, URI url, String language, Date lastModified) {
 		try {
-			if (cache instanceof ExplorableCache) {
-				CacheEntry entry = ((ExplorableCache) cache).getEntry(url.toString());
-				// if the url was modified after the cache was created, refresh it
-				if (entry != null && lastModified != null && lastModified.after(entry.getLastModified())) {
-					logger.info("Refreshing SSR cache for: " + url);
-					cache.refresh(url.toString());
-				}
-				// not cache yet, do so
-				else if (entry == null) {
-					logger.info("Calculating SSR cache for: " + url);
-					cache.put(url.toString(), calculateCache(application, url));
-				}
-				else {
-					logger.debug("SSR cache still valid for: " + url);
-				}
-			}
-			else if (cache != null) {
-				Object object = cache.get(url.toString());
-				if (object == null) {
-					cache.put(url.toString(), calculateCache(application, url));	
-				}
-				else {
-					logger.debug("SSR cache still valid for: " + url);
-				}
-			}
+			update(application, url, language, lastModified);
 		}
 		catch (Exception e) {
 			logger.warn("Could not cache: " + url, e);
 		}
 	}
 	
-	private byte [] calculateCache(WebApplication application, URI uri) {
-		HTTPRequest request = new DefaultHTTPRequest("GET", uri.toString(), new PlainMimeEmptyPart(null, 
-			new MimeHeader("Host", uri.getHost()),
-			new MimeHeader("Content-Length", "0")
-		));
-		return Renderer.executeAsBytes(application, request, null, getHttpClient(), null, false, false);
+	/**
+	 * Renders the page into the cache if it is not cached yet or outdated, returns whether it was rendered
+	 * Device variants are only rendered when a device requests them, if they exist they are refreshed along with the page
+	 */
+	boolean update(WebApplication application, URI url, String language, Date lastModified) throws Exception {
+		Renderer renderer = getRenderer(application);
+		// the key the request path reads, so the same language fallback applies
+		String key = renderer.getCacheKey(url, language);
+		boolean updated = update(application, url, key, lastModified, true);
+		String resolved = Renderer.getVariant(key).get("language");
+		for (String device : renderer.getDevices()) {
+			updated |= update(application, url, renderer.getCacheKey(url, resolved, device), lastModified, false);
+		}
+		return updated;
+	}
+	
+	private boolean update(WebApplication application, URI url, String key, Date lastModified, boolean create) throws Exception {
+		Cache cache = getCache(application);
+		if (cache instanceof ExplorableCache) {
+			CacheEntry entry = ((ExplorableCache) cache).getEntry(key);
+			// if the url was modified after the cache was created or the entry has timed out, refresh it
+			if (entry != null && ((lastModified != null && lastModified.after(entry.getLastModified())) || isTimedOut(entry))) {
+				logger.info("Refreshing SSR cache for: " + url);
+				cache.refresh(key);
+				return true;
+			}
+			// not cache yet, do so
+			else if (entry == null && create) {
+				logger.info("Calculating SSR cache for: " + url);
+				cache.put(key, calculateCache(application, key));
+				return true;
+			}
+		}
+		else if (cache != null && create) {
+			Object object = cache.get(key);
+			if (object == null) {
+				cache.put(key, calculateCache(application, key));
+				return true;
+			}
+		}
+		logger.debug("SSR cache still valid for: " + url);
+		return false;
+	}
+	
+	private boolean isTimedOut(CacheEntry entry) {
+		return getConfig().getCacheTimeout() != null && entry.getLastModified() != null 
+			&& new Date().getTime() - entry.getLastModified().getTime() > getConfig().getCacheTimeout();
+	}
+	
+	private RenderedPage calculateCache(WebApplication application, String key) throws URISyntaxException {
+		Renderer renderer = getRenderer(application);
+		// the cache stores the result itself
+		return renderer.renderInBackground(key, renderer.newRequest(key), false);
+	}
+	
+	public RendererMetrics getMetrics(WebApplication application) {
+		Renderer renderer = renderers.get(application.getId());
+		return renderer == null ? null : renderer.getMetrics();
+	}
+	
+	private ResourceFilter newFilter() {
+		ResourceFilter filter = new ResourceFilter();
+		if (getConfig().getBlockedResources() != null) {
+			for (String regex : getConfig().getBlockedResources()) {
+				filter.deny(regex);
+			}
+		}
+		if (getConfig().getAllowedResources() != null) {
+			for (String regex : getConfig().getAllowedResources()) {
+				filter.allow(regex);
+			}
+		}
+		if (getConfig().getBlockedResourceTypes() != null) {
+			for (ResourceType type : getConfig().getBlockedResourceTypes()) {
+				filter.block(type);
+			}
+		}
+		filter.setSameOriginOnly(getConfig().isSameOriginOnly());
+		return filter.isEmpty() ? null : filter;
+	}
+	
+	private CacheKeyNormalizer newNormalizer(WebApplication application) {
+		CacheKeyNormalizer normalizer = new CacheKeyNormalizer(getConfig().getIgnoredParameters());
+		normalizer.setKeepQueryOrder(getConfig().isKeepQueryOrder());
+		normalizer.setRemoveTrailingSlash(getConfig().isRemoveTrailingSlash());
+		// all the aliases of the virtual host serve the same pages
+		VirtualHostArtifact host = application.getConfig().getVirtualHost();
+		if (host != null && host.getConfig().getHost() != null && host.getConfig().getAliases() != null) {
+			for (String alias : host.getConfig().getAliases()) {
+				normalizer.addAlias(alias, host.getConfig().getHost());
+			}
+		}
+		return normalizer;
+	}
+	
+	/**
+	 * Renders the pages that can be reached from the root of the application into the cache
+	 */
+	public WarmupStatus crawl(WebApplication application, String language, Integer maxDepth, Integer maxPages, List<String> includes, List<String> excludes, Integer concurrency, Long delay) {
+		String host = application.getConfig().getVirtualHost() == null ? null : application.getConfig().getVirtualHost().getConfig().getHost();
+		PrerenderCrawler crawler = new PrerenderCrawler(getRenderer(application), host);
+		if (maxDepth != null) {
+			crawler.setMaxDepth(maxDepth);
+		}
+		if (maxPages != null) {
+			crawler.setMaxPages(maxPages);
+		}
+		if (concurrency != null) {
+			crawler.setConcurrency(concurrency);
+		}
+		if (delay != null) {
+			crawler.setDelay(delay);
+		}
+		if (includes != null) {
+			for (String include : includes) {
+				crawler.addInclude(include);
+			}
+		}
+		if (excludes != null) {
+			for (String exclude : excludes) {
+				crawler.addExclude(exclude);
+			}
+		}
+		return crawler.crawl(application.getServerPath(), language);
+	}
+	
+	/**
+	 * Renders the pages into the cache in the background, the returned job can be used to follow up
+	 */
+	public RenderJob cache(WebApplication application, List<CacheRequest> requests, Integer concurrency) {
+		if (concurrency == null) {
+			concurrency = getConfig().getRenderConcurrency() == null || getConfig().getRenderConcurrency() <= 0 ? Runtime.getRuntime().availableProcessors() : getConfig().getRenderConcurrency();
+		}
+		RenderJob job = new RenderJob();
+		jobs.put(job.getId(), job);
+		return job.start(this, application, requests == null ? new ArrayList<CacheRequest>() : requests, concurrency);
+	}
+	
+	public RenderJob getJob(String id) {
+		return jobs.get(id);
+	}
+	
+	/**
+	 * Renders the page (without caching it) and returns all the resources that were requested during the render
+	 */
+	public RenderTrace trace(WebApplication application, URI url, String language) throws URISyntaxException {
+		Renderer renderer = getRenderer(application);
+		return renderer.trace(renderer.newRequest(renderer.getCacheKey(url, language, null)), url.toString());
+	}
+	
+	public WarmupStatus getWarmupStatus(WebApplication application) {
+		CacheWarmer warmer = warmers.get(application.getId());
+		return warmer == null ? null : warmer.getStatus();
+	}
+	
+	public List<RenderFailure> getFailures(WebApplication application) {
+		Renderer renderer = renderers.get(application.getId());
+		return renderer == null ? null : renderer.getFailures().getFailures();
+	}
+	
+	private Renderer getRenderer(WebApplication application) {
+		Renderer renderer = renderers.get(application.getId());
+		// not started for this application, render without the shared resources
+		if (renderer == null) {
+			renderer = new Renderer(application, getHttpClient(), getCache(application));
+			renderer.setNormalizer(newNormalizer(application));
+			renderer.setFilter(newFilter());
+		}
+		return renderer;
 	}
 }
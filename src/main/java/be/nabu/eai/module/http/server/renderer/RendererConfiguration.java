@@ -35,6 +35,29 @@ public class RendererConfiguration {
 	private CacheProviderArtifact cacheProvider;
 	private HTTPClientArtifact httpClient;
 	private boolean warmup;
+	private Integer minClientPoolSize, maxClientPoolSize;
+	private Integer renderConcurrency, renderQueueSize;
+	private Long renderQueueTimeout;
+	private RenderFallback renderFallback, failureFallback;
+	private Long failureBackoff, maxFailureBackoff;
+	private Long cacheTimeout, staleTimeout;
+	private boolean warmShell;
+	private String shellRouteScript;
+	private Long scriptCacheSize, staticCacheSize;
+	private Integer prefetchConcurrency;
+	private Long settleQuietPeriod, settleTimeout;
+	private String readySignal;
+	private List<String> ignoredParameters, devices, warmupUrls, blockedResources, allowedResources;
+	private List<ResourceType> blockedResourceTypes;
+	private boolean sameOriginOnly;
+	private Long externalCacheSize;
+	private String externalCacheDirectory;
+	private Long externalCacheDiskSize;
+	private String sitemap;
+	private Integer warmupConcurrency;
+	private Long warmupTimeout;
+	private boolean warmupInBackground;
+	private boolean keepQueryOrder, removeTrailingSlash;
 	
 	@EnvironmentSpecific
 	@XmlJavaTypeAdapter(value = ArtifactXMLAdapter.class)
@@ -52,6 +75,140 @@ public class RendererConfiguration {
 		this.agents = agents;
 	}
 	
+	// regexes for query parameters that don't influence the page and should not be part of the cache key, common tracking parameters are always ignored
+	public List<String> getIgnoredParameters() {
+		return ignoredParameters;
+	}
+	public void setIgnoredParameters(List<String> ignoredParameters) {
+		this.ignoredParameters = ignoredParameters;
+	}
+	
+	// by default the query parameters are sorted when calculating the cache key
+	public boolean isKeepQueryOrder() {
+		return keepQueryOrder;
+	}
+	public void setKeepQueryOrder(boolean keepQueryOrder) {
+		this.keepQueryOrder = keepQueryOrder;
+	}
+	
+	// whether /a/ and /a share a cache entry, only enable this if the site serves the same page for both as the page is rendered for the url without the slash
+	public boolean isRemoveTrailingSlash() {
+		return removeTrailingSlash;
+	}
+	public void setRemoveTrailingSlash(boolean removeTrailingSlash) {
+		this.removeTrailingSlash = removeTrailingSlash;
+	}
+	
+	// device classes that get their own rendered page, in the form name=regex where the regex is matched against the user agent, e.g. mobile=Mobi|Android
+	public List<String> getDevices() {
+		return devices;
+	}
+	public void setDevices(List<String> devices) {
+		this.devices = devices;
+	}
+	
+	// the path of the sitemap that lists the pages to warm up, e.g. /sitemap.xml
+	public String getSitemap() {
+		return sitemap;
+	}
+	public void setSitemap(String sitemap) {
+		this.sitemap = sitemap;
+	}
+	
+	// additional paths to warm up, the root of the application is always warmed up
+	public List<String> getWarmupUrls() {
+		return warmupUrls;
+	}
+	public void setWarmupUrls(List<String> warmupUrls) {
+		this.warmupUrls = warmupUrls;
+	}
+	
+	// how many pages we warm up at the same time
+	@EnvironmentSpecific
+	public Integer getWarmupConcurrency() {
+		return warmupConcurrency;
+	}
+	public void setWarmupConcurrency(Integer warmupConcurrency) {
+		this.warmupConcurrency = warmupConcurrency;
+	}
+	
+	// the maximum time (in ms) the warmup can take, pages we did not get to by then are skipped
+	@EnvironmentSpecific
+	public Long getWarmupTimeout() {
+		return warmupTimeout;
+	}
+	public void setWarmupTimeout(Long warmupTimeout) {
+		this.warmupTimeout = warmupTimeout;
+	}
+	
+	// warm up after the application has started instead of delaying the start
+	@EnvironmentSpecific
+	public boolean isWarmupInBackground() {
+		return warmupInBackground;
+	}
+	public void setWarmupInBackground(boolean warmupInBackground) {
+		this.warmupInBackground = warmupInBackground;
+	}
+	
+	// regexes for resources that should not be fetched while rendering (e.g. analytics), they get an empty response
+	public List<String> getBlockedResources() {
+		return blockedResources;
+	}
+	public void setBlockedResources(List<String> blockedResources) {
+		this.blockedResources = blockedResources;
+	}
+	
+	// regexes for resources that are always fetched, regardless of the other rules
+	public List<String> getAllowedResources() {
+		return allowedResources;
+	}
+	public void setAllowedResources(List<String> allowedResources) {
+		this.allowedResources = allowedResources;
+	}
+	
+	// the types of resources (based on the extension) that should not be fetched while rendering
+	public List<ResourceType> getBlockedResourceTypes() {
+		return blockedResourceTypes;
+	}
+	public void setBlockedResourceTypes(List<ResourceType> blockedResourceTypes) {
+		this.blockedResourceTypes = blockedResourceTypes;
+	}
+	
+	// only fetch resources from the same host as the page
+	public boolean isSameOriginOnly() {
+		return sameOriginOnly;
+	}
+	public void setSameOriginOnly(boolean sameOriginOnly) {
+		this.sameOriginOnly = sameOriginOnly;
+	}
+	
+	// the maximum combined size (in bytes) of the resources from other servers we keep in memory for all renders, set to 0 to disable
+	@EnvironmentSpecific
+	public Long getExternalCacheSize() {
+		return externalCacheSize;
+	}
+	public void setExternalCacheSize(Long externalCacheSize) {
+		this.externalCacheSize = externalCacheSize;
+	}
+	
+	// a directory where the resources from other servers are stored so they survive a restart
+	@EnvironmentSpecific
+	public String getExternalCacheDirectory() {
+		return externalCacheDirectory;
+	}
+	public void setExternalCacheDirectory(String externalCacheDirectory) {
+		this.externalCacheDirectory = externalCacheDirectory;
+	}
+	
+	// the maximum size of the external cache directory, the least recently used resources are removed first
+	@EnvironmentSpecific
+	public Long getExternalCacheDiskSize() {
+		return externalCacheDiskSize;
+	}
+	public void setExternalCacheDiskSize(Long externalCacheDiskSize) {
+		this.externalCacheDiskSize = externalCacheDiskSize;
+	}
+	
 	@XmlJavaTypeAdapter(value = ArtifactXMLAdapter.class)
 	public HTTPClientArtifact getHttpClient() {
 		return httpClient;
@@ -67,4 +224,167 @@ public class RendererConfiguration {
 	public void setWarmup(boolean warmup) {
 		this.warmup = warmup;
 	}
+	
+	@EnvironmentSpecific
+	public Integer getMinClientPoolSize() {
+		return minClientPoolSize;
+	}
+	public void setMinClientPoolSize(Integer minClientPoolSize) {
+		this.minClientPoolSize = minClientPoolSize;
+	}
+	
+	// set to 0 to disable pooling
+	@EnvironmentSpecific
+	public Integer getMaxClientPoolSize() {
+		return maxClientPoolSize;
+	}
+	public void setMaxClientPoolSize(Integer maxClientPoolSize) {
+		this.maxClientPoolSize = maxClientPoolSize;
+	}
+	
+	// the amount of renders that can run at the same time, set to 0 to render on the request thread without limits
+	@EnvironmentSpecific
+	public Integer getRenderConcurrency() {
+		return renderConcurrency;
+	}
+	public void setRenderConcurrency(Integer renderConcurrency) {
+		this.renderConcurrency = renderConcurrency;
+	}
+	
+	@EnvironmentSpecific
+	public Integer getRenderQueueSize() {
+		return renderQueueSize;
+	}
+	public void setRenderQueueSize(Integer renderQueueSize) {
+		this.renderQueueSize = renderQueueSize;
+	}
+	
+	// how long (in ms) a render can wait in the queue before we give up on it
+	@EnvironmentSpecific
+	public Long getRenderQueueTimeout() {
+		return renderQueueTimeout;
+	}
+	public void setRenderQueueTimeout(Long renderQueueTimeout) {
+		this.renderQueueTimeout = renderQueueTimeout;
+	}
+	
+	// what to do when we can not render the page
+	public RenderFallback getRenderFallback() {
+		return renderFallback;
+	}
+	public void setRenderFallback(RenderFallback renderFallback) {
+		this.renderFallback = renderFallback;
+	}
+	
+	// what to do when the page failed to render recently
+	public RenderFallback getFailureFallback() {
+		return failureFallback;
+	}
+	public void setFailureFallback(RenderFallback failureFallback) {
+		this.failureFallback = failureFallback;
+	}
+	
+	// how long (in ms) we wait before rendering a failed page again, this doubles with each consecutive failure
+	@EnvironmentSpecific
+	public Long getFailureBackoff() {
+		return failureBackoff;
+	}
+	public void setFailureBackoff(Long failureBackoff) {
+		this.failureBackoff = failureBackoff;
+	}
+	
+	// the maximum time (in ms) we wait before rendering a failed page again
+	@EnvironmentSpecific
+	public Long getMaxFailureBackoff() {
+		return maxFailureBackoff;
+	}
+	public void setMaxFailureBackoff(Long maxFailureBackoff) {
+		this.maxFailureBackoff = maxFailureBackoff;
+	}
+	
+	// how long (in ms) a rendered page remains valid in the cache, if not set it remains valid until it is explicitly refreshed
+	@EnvironmentSpecific
+	public Long getCacheTimeout() {
+		return cacheTimeout;
+	}
+	public void setCacheTimeout(Long cacheTimeout) {
+		this.cacheTimeout = cacheTimeout;
+	}
+	
+	// how long (in ms) after the cache timeout we still serve the outdated page while refreshing it in the background
+	@EnvironmentSpecific
+	public Long getStaleTimeout() {
+		return staleTimeout;
+	}
+	public void setStaleTimeout(Long staleTimeout) {
+		this.staleTimeout = staleTimeout;
+	}
+	
+	// keep the application loaded in pooled clients and render subsequent pages using the client-side router
+	@EnvironmentSpecific
+	public boolean isWarmShell() {
+		return warmShell;
+	}
+	public void setWarmShell(boolean warmShell) {
+		this.warmShell = warmShell;
+	}
+	
+	// the javascript that routes the loaded application to a new url, the url is available as ${url}
+	public String getShellRouteScript() {
+		return shellRouteScript;
+	}
+	public void setShellRouteScript(String shellRouteScript) {
+		this.shellRouteScript = shellRouteScript;
+	}
+	
+	// the maximum combined size (in characters) of the scripts we keep compiled for all renders, set to 0 to disable
+	@EnvironmentSpecific
+	public Long getScriptCacheSize() {
+		return scriptCacheSize;
+	}
+	public void setScriptCacheSize(Long scriptCacheSize) {
+		this.scriptCacheSize = scriptCacheSize;
+	}
+	
+	// the maximum combined size (in bytes) of the static resources of the application (scripts, stylesheets...) we keep in memory for all renders, set to 0 to disable
+	@EnvironmentSpecific
+	public Long getStaticCacheSize() {
+		return staticCacheSize;
+	}
+	public void setStaticCacheSize(Long staticCacheSize) {
+		this.staticCacheSize = staticCacheSize;
+	}
+	
+	// the amount of scripts and stylesheets we fetch at the same time ahead of the parser for all renders, set to 0 to disable
+	@EnvironmentSpecific
+	public Integer getPrefetchConcurrency() {
+		return prefetchConcurrency;
+	}
+	public void setPrefetchConcurrency(Integer prefetchConcurrency) {
+		this.prefetchConcurrency = prefetchConcurrency;
+	}
+	
+	// how long (in ms) the page has to be idle before we consider it rendered
+	public Long getSettleQuietPeriod() {
+		return settleQuietPeriod;
+	}
+	public void setSettleQuietPeriod(Long settleQuietPeriod) {
+		this.settleQuietPeriod = settleQuietPeriod;
+	}
+	
+	// the maximum time (in ms) we wait for the page to be rendered
+	public Long getSettleTimeout() {
+		return settleTimeout;
+	}
+	public void setSettleTimeout(Long settleTimeout) {
+		this.settleTimeout = settleTimeout;
+	}
+	
+	// a javascript expression that evaluates to true when the application is done rendering, e.g. window.renderReady
+	public String getReadySignal() {
+		return readySignal;
+	}
+	public void setReadySignal(String readySignal) {
+		this.readySignal = readySignal;
+	}
 }
@@ -0,0 +1,206 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latencies for a single renderer, kept for as long as the renderer is started
+ */
+public class RendererMetrics implements RendererMetricsMBean {
+
+	private AtomicLong renders = new AtomicLong(),
+		// concurrent requests for the same page that waited on an ongoing render instead of starting their own
+		coalescedRenders = new AtomicLong(),
+		// renders that were refused because the scheduler was saturated
+		rejectedRenders = new AtomicLong(),
+		queueDepth = new AtomicLong(),
+		dequeuedRenders = new AtomicLong(),
+		totalQueueWait = new AtomicLong(),
+		maxQueueWait = new AtomicLong(),
+		// outdated pages that were served while being refreshed in the background
+		staleHits = new AtomicLong(),
+		backgroundRefreshes = new AtomicLong(),
+		// the time (in ms) we did not spend compiling scripts because they were in the shared script cache
+		savedCompileTime = new AtomicLong(),
+		settled = new AtomicLong(),
+		totalSettleTime = new AtomicLong(),
+		failedRenders = new AtomicLong(),
+		// requests for pages that failed recently, answered with the fallback instead of a new render
+		backoffHits = new AtomicLong(),
+		cacheHits = new AtomicLong(),
+		cacheMisses = new AtomicLong(),
+		// resources we did not fetch because they were blocked
+		blockedResources = new AtomicLong(),
+		externalRequests = new AtomicLong(),
+		externalRequestTime = new AtomicLong();
+	
+	private Map<RenderPhase, LatencyHistogram> latencies = new EnumMap<RenderPhase, LatencyHistogram>(RenderPhase.class);
+	
+	public RendererMetrics() {
+		for (RenderPhase phase : RenderPhase.values()) {
+			latencies.put(phase, new LatencyHistogram(phase.name()));
+		}
+	}
+
+	public long getRenders() {
+		return renders.get();
+	}
+	void render() {
+		renders.incrementAndGet();
+	}
+
+	public long getCoalescedRenders() {
+		return coalescedRenders.get();
+	}
+	void coalescedRender() {
+		coalescedRenders.incrementAndGet();
+	}
+
+	public long getRejectedRenders() {
+		return rejectedRenders.get();
+	}
+	void rejectedRender() {
+		rejectedRenders.incrementAndGet();
+	}
+
+	public long getQueueDepth() {
+		return queueDepth.get();
+	}
+	void queued() {
+		queueDepth.incrementAndGet();
+	}
+	void dequeued(long waited) {
+		queueDepth.decrementAndGet();
+		dequeuedRenders.incrementAndGet();
+		totalQueueWait.addAndGet(waited);
+		long max = maxQueueWait.get();
+		while (waited > max && !maxQueueWait.compareAndSet(max, waited)) {
+			max = maxQueueWait.get();
+		}
+	}
+
+	public long getAverageQueueWait() {
+		long dequeued = dequeuedRenders.get();
+		return dequeued == 0 ? 0 : totalQueueWait.get() / dequeued;
+	}
+
+	public long getMaxQueueWait() {
+		return maxQueueWait.get();
+	}
+
+	public long getStaleHits() {
+		return staleHits.get();
+	}
+	void staleHit() {
+		staleHits.incrementAndGet();
+	}
+
+	public long getBackgroundRefreshes() {
+		return backgroundRefreshes.get();
+	}
+	void backgroundRefresh() {
+		backgroundRefreshes.incrementAndGet();
+	}
+
+	public long getSavedCompileTime() {
+		return savedCompileTime.get();
+	}
+	void savedCompileTime(long time) {
+		savedCompileTime.addAndGet(time);
+	}
+
+	public long getAverageSettleTime() {
+		long settled = this.settled.get();
+		return settled == 0 ? 0 : totalSettleTime.get() / settled;
+	}
+	void settled(long time) {
+		settled.incrementAndGet();
+		totalSettleTime.addAndGet(time);
+	}
+
+	public long getFailedRenders() {
+		return failedRenders.get();
+	}
+	void failedRender() {
+		failedRenders.incrementAndGet();
+	}
+
+	public long getBackoffHits() {
+		return backoffHits.get();
+	}
+	void backoffHit() {
+		backoffHits.incrementAndGet();
+	}
+
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+	void cacheHit() {
+		cacheHits.incrementAndGet();
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+	void cacheMiss() {
+		cacheMisses.incrementAndGet();
+	}
+
+	public long getBlockedResources() {
+		return blockedResources.get();
+	}
+	void blocked(long amount) {
+		blockedResources.addAndGet(amount);
+	}
+	void externalRequests(long amount, long time) {
+		externalRequests.addAndGet(amount);
+		externalRequestTime.addAndGet(time);
+	}
+
+	/**
+	 * An estimate of the time (in ms) we saved by blocking resources, based on the average time of an external request
+	 */
+	public long getEstimatedBlockingSavings() {
+		long requests = externalRequests.get();
+		return requests == 0 ? 0 : blockedResources.get() * externalRequestTime.get() / requests;
+	}
+
+	public long getRenderTimeP50() {
+		return getLatency(RenderPhase.TOTAL).getP50();
+	}
+
+	public long getRenderTimeP99() {
+		return getLatency(RenderPhase.TOTAL).getP99();
+	}
+
+	public List<LatencyHistogram> getLatencies() {
+		return new ArrayList<LatencyHistogram>(latencies.values());
+	}
+
+	public LatencyHistogram getLatency(RenderPhase phase) {
+		return latencies.get(phase);
+	}
+	void phase(RenderPhase phase, long duration) {
+		latencies.get(phase).record(duration);
+	}
+}
@@ -0,0 +1,43 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+/**
+ * The renderer metrics as they are exposed over JMX
+ */
+public interface RendererMetricsMBean {
+	public long getRenders();
+	public long getCoalescedRenders();
+	public long getRejectedRenders();
+	public long getFailedRenders();
+	public long getQueueDepth();
+	public long getAverageQueueWait();
+	public long getMaxQueueWait();
+	public long getCacheHits();
+	public long getCacheMisses();
+	public long getStaleHits();
+	public long getBackoffHits();
+	public long getBackgroundRefreshes();
+	public long getBlockedResources();
+	public long getEstimatedBlockingSavings();
+	public long getSavedCompileTime();
+	public long getAverageSettleTime();
+	public long getRenderTimeP50();
+	public long getRenderTimeP99();
+}
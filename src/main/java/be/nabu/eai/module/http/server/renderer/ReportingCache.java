@@ -0,0 +1,57 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * The cache of a web client, responses served from it never reach the connection so we report them to the connection of the current render.
+ */
+public class ReportingCache extends Cache {
+
+	private static final long serialVersionUID = 1L;
+	
+	private transient volatile WebConnectionImpl connection;
+
+	@Override
+	public WebResponse getCachedResponse(WebRequest request) {
+		WebResponse response = super.getCachedResponse(request);
+		WebConnectionImpl connection = this.connection;
+		if (response != null && connection != null) {
+			connection.cached(request, response);
+		}
+		return response;
+	}
+
+	/**
+	 * Looks up the response without reporting it
+	 */
+	public WebResponse peek(WebRequest request) {
+		return super.getCachedResponse(request);
+	}
+
+	public WebConnectionImpl getConnection() {
+		return connection;
+	}
+
+	public void setConnection(WebConnectionImpl connection) {
+		this.connection = connection;
+	}
+}
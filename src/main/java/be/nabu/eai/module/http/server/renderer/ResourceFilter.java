@@ -0,0 +1,81 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which resources are not worth fetching during a render (e.g. analytics, fonts...), these get an empty response instead.
+ * Allowed patterns take precedence over all the other rules.
+ */
+public class ResourceFilter {
+
+	private List<Pattern> denied = new ArrayList<Pattern>(), allowed = new ArrayList<Pattern>();
+	// only resources from the same host as the page are fetched
+	private boolean sameOriginOnly;
+	private Set<ResourceType> blockedTypes = EnumSet.noneOf(ResourceType.class);
+
+	public boolean isBlocked(URL url, String host) {
+		String full = url.toString();
+		for (Pattern pattern : allowed) {
+			if (pattern.matcher(full).find()) {
+				return false;
+			}
+		}
+		for (Pattern pattern : denied) {
+			if (pattern.matcher(full).find()) {
+				return true;
+			}
+		}
+		if (sameOriginOnly && host != null && !host.equalsIgnoreCase(url.getHost())) {
+			return true;
+		}
+		ResourceType type = ResourceType.fromPath(url.getPath());
+		return type != null && blockedTypes.contains(type);
+	}
+
+	public boolean isEmpty() {
+		return denied.isEmpty() && !sameOriginOnly && blockedTypes.isEmpty();
+	}
+
+	public void deny(String regex) {
+		denied.add(Pattern.compile(regex));
+	}
+
+	public void allow(String regex) {
+		allowed.add(Pattern.compile(regex));
+	}
+
+	public void block(ResourceType type) {
+		blockedTypes.add(type);
+	}
+
+	public boolean isSameOriginOnly() {
+		return sameOriginOnly;
+	}
+
+	public void setSameOriginOnly(boolean sameOriginOnly) {
+		this.sameOriginOnly = sameOriginOnly;
+	}
+}
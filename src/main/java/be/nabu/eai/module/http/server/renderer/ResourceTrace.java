@@ -0,0 +1,85 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+/**
+ * A single resource request during a traced render, the offsets are relative to the start of the render
+ */
+public class ResourceTrace {
+
+	public enum Origin {
+		// dispatched to the application itself
+		INTERNAL,
+		// fetched from another server with the http client
+		EXTERNAL,
+		// served from the cache of the web client
+		CACHE,
+		// not fetched at all because of the resource filter
+		BLOCKED
+	}
+
+	private String url, method;
+	private Origin origin;
+	private int status;
+	private long bytes, start, end;
+
+	public ResourceTrace(String url, String method, Origin origin, int status, long bytes, long start, long end) {
+		this.url = url;
+		this.method = method;
+		this.origin = origin;
+		this.status = status;
+		this.bytes = bytes;
+		this.start = start;
+		this.end = end;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public Origin getOrigin() {
+		return origin;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	// when (in ms after the render started) the request started
+	public long getStart() {
+		return start;
+	}
+
+	// when (in ms after the render started) the response was available
+	public long getEnd() {
+		return end;
+	}
+
+	public long getDuration() {
+		return end - start;
+	}
+}
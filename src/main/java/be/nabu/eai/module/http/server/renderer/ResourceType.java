@@ -0,0 +1,51 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+/**
+ * The kinds of resources we can block, derived from the extension of the url
+ */
+public enum ResourceType {
+	SCRIPT("js", "mjs"),
+	STYLESHEET("css"),
+	FONT("woff", "woff2", "ttf", "otf", "eot"),
+	IMAGE("png", "jpg", "jpeg", "gif", "svg", "webp", "ico", "bmp"),
+	MEDIA("mp4", "webm", "ogg", "mp3", "wav", "m4a", "avi", "mov");
+
+	private String [] extensions;
+
+	private ResourceType(String...extensions) {
+		this.extensions = extensions;
+	}
+
+	public static ResourceType fromPath(String path) {
+		if (path == null || path.lastIndexOf('.') < 0) {
+			return null;
+		}
+		String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase();
+		for (ResourceType type : values()) {
+			for (String candidate : type.extensions) {
+				if (candidate.equals(extension)) {
+					return type;
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
+/**
+ * Compiled scripts shared by all the web clients that render a web application.
+ * Scripts are cached by url and a hash of their content so a changed script is never reused.
+ */
+public class ScriptCache {
+
+	private static Charset UTF8 = Charset.forName("UTF-8");
+
+	// least recently used first
+	private LinkedHashMap<String, CachedScript> scripts = new LinkedHashMap<String, CachedScript>(16, 0.75f, true);
+	// the maximum combined length of the cached sources
+	private long maxSize;
+	private long size;
+	private AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), savedCompileTime = new AtomicLong();
+
+	public ScriptCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public CachedScript get(String url, String hash) {
+		CachedScript script;
+		synchronized(scripts) {
+			script = scripts.get(url + "#" + hash);
+		}
+		if (script == null) {
+			misses.incrementAndGet();
+		}
+		else {
+			hits.incrementAndGet();
+			savedCompileTime.addAndGet(script.getCompileTime());
+		}
+		return script;
+	}
+
+	public void put(String url, String hash, Script script, long size, long compileTime) {
+		// no use in evicting everything else for a single script
+		if (size > maxSize) {
+			return;
+		}
+		synchronized(scripts) {
+			CachedScript previous = scripts.put(url + "#" + hash, new CachedScript(script, size, compileTime));
+			if (previous != null) {
+				this.size -= previous.getSize();
+			}
+			this.size += size;
+			Iterator<CachedScript> iterator = scripts.values().iterator();
+			while (this.size > maxSize && iterator.hasNext()) {
+				this.size -= iterator.next().getSize();
+				iterator.remove();
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized(scripts) {
+			scripts.clear();
+			size = 0;
+		}
+	}
+
+	public static String hash(String content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte [] bytes = digest.digest(content.getBytes(UTF8));
+			StringBuilder builder = new StringBuilder();
+			for (byte single : bytes) {
+				builder.append(String.format("%02x", single & 0xff));
+			}
+			return builder.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getSavedCompileTime() {
+		return savedCompileTime.get();
+	}
+
+	public long getSize() {
+		synchronized(scripts) {
+			return size;
+		}
+	}
+
+	public static class CachedScript {
+		private Script script;
+		private long size, compileTime;
+
+		public CachedScript(Script script, long size, long compileTime) {
+			this.script = script;
+			this.size = size;
+			this.compileTime = compileTime;
+		}
+		public Script getScript() {
+			return script;
+		}
+		public long getSize() {
+			return size;
+		}
+		// in ms
+		public long getCompileTime() {
+			return compileTime;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.ScriptResult;
+import com.gargoylesoftware.htmlunit.html.DomChangeEvent;
+import com.gargoylesoftware.htmlunit.html.DomChangeListener;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeEvent;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeListener;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJob;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager.JavaScriptJobFilter;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
+
+/**
+ * Waits until a page is done rendering: no pending requests, no one-off timers that fire before the timeout and no changes to the dom for a while.
+ * Alternatively the application can signal that it is ready, in all cases we never wait longer than the timeout.
+ */
+public class SettleDetector implements DomChangeListener, HtmlAttributeChangeListener {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger logger = LoggerFactory.getLogger(SettleDetector.class);
+	private static final JavaScriptJobFilter ONE_OFF = new JavaScriptJobFilter() {
+		@Override
+		public boolean passes(JavaScriptJob job) {
+			return !job.isPeriodic();
+		}
+	};
+	
+	private long quietPeriod, timeout;
+	private String readySignal;
+	private volatile long lastActivity;
+
+	public SettleDetector(long quietPeriod, long timeout, String readySignal) {
+		this.quietPeriod = quietPeriod;
+		this.timeout = timeout;
+		this.readySignal = readySignal;
+	}
+
+	/**
+	 * Returns how long (in ms) it took for the page to settle
+	 */
+	public long settle(HtmlPage page, WebConnectionImpl connection) {
+		long started = System.currentTimeMillis();
+		long deadline = started + timeout;
+		lastActivity = started;
+		page.addDomChangeListener(this);
+		page.addHtmlAttributeChangeListener(this);
+		try {
+			while (true) {
+				long now = System.currentTimeMillis();
+				if (now >= deadline) {
+					logger.warn("Page " + page.getUrl() + " did not settle within " + timeout + "ms");
+					break;
+				}
+				if (readySignal != null) {
+					if (isReady(page)) {
+						break;
+					}
+				}
+				else if (connection.getPending() == 0 
+						&& now - Math.max(lastActivity, connection.getLastActivity()) >= quietPeriod 
+						&& !hasPendingJob(page, deadline)) {
+					break;
+				}
+				try {
+					Thread.sleep(Math.min(25, deadline - now));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		finally {
+			page.removeDomChangeListener(this);
+			page.removeHtmlAttributeChangeListener(this);
+		}
+		return System.currentTimeMillis() - started;
+	}
+	
+	private boolean isReady(HtmlPage page) {
+		try {
+			ScriptResult result = page.executeJavaScript(readySignal);
+			return result != null && Boolean.TRUE.equals(result.getJavaScriptResult());
+		}
+		catch (Exception e) {
+			logger.debug("Could not evaluate ready signal", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Whether a one-off timer (e.g. a debounced render or a delayed data load) will fire before we give up on settling.
+	 * Recurring timers (e.g. a clock) would prevent us from ever settling, they are not taken into account.
+	 */
+	private boolean hasPendingJob(HtmlPage page, long deadline) {
+		JavaScriptJobManager jobManager = page.getEnclosingWindow().getJobManager();
+		JavaScriptJob job = jobManager == null ? null : jobManager.getEarliestJob(ONE_OFF);
+		if (job != null) {
+			Long target = job.getTargetExecutionTime();
+			return target == null || target <= deadline;
+		}
+		return false;
+	}
+
+	@Override
+	public void nodeAdded(DomChangeEvent event) {
+		lastActivity = System.currentTimeMillis();
+	}
+
+	@Override
+	public void nodeDeleted(DomChangeEvent event) {
+		lastActivity = System.currentTimeMillis();
+	}
+
+	@Override
+	public void attributeAdded(HtmlAttributeChangeEvent event) {
+		lastActivity = System.currentTimeMillis();
+	}
+
+	@Override
+	public void attributeRemoved(HtmlAttributeChangeEvent event) {
+		lastActivity = System.currentTimeMillis();
+	}
+
+	@Override
+	public void attributeReplaced(HtmlAttributeChangeEvent event) {
+		lastActivity = System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,191 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * The static resources of the web application (scripts, stylesheets...) as they were served to the renderer, after post processing.
+ * Repeat fetches are answered from memory instead of going through the dispatcher again.
+ * The cache is only valid for the current deployment of the application.
+ */
+public class StaticResourceCache {
+
+	// least recently used first
+	private LinkedHashMap<String, StaticResource> resources = new LinkedHashMap<String, StaticResource>(16, 0.75f, true);
+	// the maximum combined size of the cached content
+	private long maxSize;
+	private long size;
+	private AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+	public StaticResourceCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the key for the request or null if the request can not be served from this cache.
+	 * The language is the one resolved for the render, if there is none we use the language cookie or the accepted languages the server sees.
+ * Requests that carry credentials (authorization or cookies other than the language) are not cached.
+	 */
+	public static String getKey(WebRequest request, String language) {
+		if (request.getHttpMethod() != HttpMethod.GET || (request.getRequestBody() != null && !request.getRequestBody().isEmpty())) {
+			return null;
+		}
+		// only resources with a static extension, anything else might be a service call
+		if (ResourceType.fromPath(request.getUrl().getPath()) == null) {
+			return null;
+		}
+		String cookie = null, accepted = null;
+		for (Map.Entry<String, String> header : request.getAdditionalHeaders().entrySet()) {
+			// requests with credentials can get content that is specific to the user
+			if (header.getKey().equalsIgnoreCase("Authorization") || (header.getKey().equalsIgnoreCase("Cookie") && hasCredentials(header.getValue()))) {
+				return null;
+			}
+			else if (header.getKey().equalsIgnoreCase("Cookie")) {
+				cookie = getLanguageCookie(header.getValue());
+			}
+			else if (header.getKey().equalsIgnoreCase("Accept-Language")) {
+				accepted = header.getValue();
+			}
+		}
+		if (language == null) {
+			// the cookie takes precedence, as it does when resolving the language
+			language = cookie == null ? accepted : cookie;
+		}
+		return request.getUrl().toString() + (language == null ? "" : "#" + language);
+	}
+	
+	// any cookie apart from the language might identify the user
+	private static boolean hasCredentials(String value) {
+		for (String part : value.split(";")) {
+			int index = part.indexOf('=');
+			String name = index < 0 ? part.trim() : part.substring(0, index).trim();
+			if (!name.isEmpty() && !name.equals("language")) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static String getLanguageCookie(String value) {
+		for (String part : value.split(";")) {
+			int index = part.indexOf('=');
+			if (index > 0 && part.substring(0, index).trim().equals("language")) {
+				return part.substring(index + 1).trim();
+			}
+		}
+		return null;
+	}
+
+	public StaticResource get(String key) {
+		StaticResource resource;
+		synchronized(resources) {
+			resource = resources.get(key);
+		}
+		if (resource == null) {
+			misses.incrementAndGet();
+		}
+		else {
+			hits.incrementAndGet();
+		}
+		return resource;
+	}
+
+	public void put(String key, int code, String message, List<NameValuePair> headers, byte [] content) {
+		long size = content == null ? 0 : content.length;
+		// no use in evicting everything else for a single resource
+		if (size > maxSize) {
+			return;
+		}
+		StaticResource resource = new StaticResource(code, message, headers, content);
+		synchronized(resources) {
+			StaticResource previous = resources.put(key, resource);
+			if (previous != null) {
+				this.size -= previous.getSize();
+			}
+			this.size += size;
+			Iterator<StaticResource> iterator = resources.values().iterator();
+			while (this.size > maxSize && iterator.hasNext()) {
+				this.size -= iterator.next().getSize();
+				iterator.remove();
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized(resources) {
+			resources.clear();
+			size = 0;
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getSize() {
+		synchronized(resources) {
+			return size;
+		}
+	}
+
+	/**
+	 * The content is shared by all the renders that fetch the resource, it must never be modified
+	 */
+	public static class StaticResource {
+		private int code;
+		private String message;
+		private List<NameValuePair> headers;
+		private byte [] content;
+
+		public StaticResource(int code, String message, List<NameValuePair> headers, byte [] content) {
+			this.code = code;
+			this.message = message;
+			this.headers = Collections.unmodifiableList(headers);
+			this.content = content;
+		}
+		public int getCode() {
+			return code;
+		}
+		public String getMessage() {
+			return message;
+		}
+		public List<NameValuePair> getHeaders() {
+			return headers;
+		}
+		public byte [] getContent() {
+			return content;
+		}
+		public long getSize() {
+			return content == null ? 0 : content.length;
+		}
+	}
+}
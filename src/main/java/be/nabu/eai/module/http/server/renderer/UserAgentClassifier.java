@@ -0,0 +1,113 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a user agent belongs to a bot that should get a rendered page.
+ * This runs for every request that hits the application so the patterns are compiled once.
+ * There is deliberately no cache of verdicts: scanning a user agent with the combined pattern is cheaper than a shared, locked lookup.
+ */
+public class UserAgentClassifier {
+
+	// https://www.keycdn.com/blog/web-crawlers
+	private static List<String> defaultAgents = Arrays.asList(new String [] {
+		// ------------------------- GOOGLE -----------------------------
+		// use https://www.google.com/webmasters/tools/googlebot-fetch?pli=1 to debug
+		// google (multiple search bots)
+		"Googlebot",
+		// google ads
+		"AdsBot",
+		"Mediapartners-Google",
+		"developers.google.com",
+
+		// -------------------------- MICROSOFT ------------------------
+		// https://www.bing.com/toolbox/webmaster/
+		"Bingbot",
+
+		// -------------------------- LINKEDIN -------------------------
+		"LinkedInBot",
+
+		// -------------------------- TWITTER -------------------------
+		"TwitterBot",
+
+		// -------------------------- PINTEREST -------------------------
+		"Pinterestbot",
+
+		// -------------------------- YAHOO ----------------------------
+		"Slurp",
+
+		// -------------------------- OTHER ----------------------------
+		"DuckDuckBot",
+		"Baiduspider",
+		"YandexBot",
+		"Sogou",
+		"Exabot",
+		"facebook.com",
+		"crawler@alexa.com",
+
+		// catch all
+		"bot",
+		"crawler",
+		"spider",
+		"robot",
+		"crawling"
+	});
+
+	// all the default agents are literals, we combine them in a single case insensitive pattern so we only scan the user agent once
+	private Pattern literals;
+	// custom agents are full regexes that have to match the entire user agent
+	private List<Pattern> patterns = new ArrayList<Pattern>();
+
+	public UserAgentClassifier(List<String> agents) {
+		StringBuilder builder = new StringBuilder();
+		for (String agent : defaultAgents) {
+			if (builder.length() > 0) {
+				builder.append("|");
+			}
+			builder.append(Pattern.quote(agent));
+		}
+		literals = Pattern.compile(builder.toString(), Pattern.CASE_INSENSITIVE);
+		if (agents != null) {
+			for (String agent : agents) {
+				if (agent != null && !agent.trim().isEmpty()) {
+					patterns.add(Pattern.compile(agent));
+				}
+			}
+		}
+	}
+
+	public boolean isBot(String userAgent) {
+		if (userAgent == null) {
+			return false;
+		}
+		if (literals.matcher(userAgent).find()) {
+			return true;
+		}
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(userAgent).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The progress of a cache warmup or crawl
+ */
+public class WarmupStatus {
+
+	// we don't keep every failure around
+	private static final int MAX_FAILURES = 100;
+
+	private volatile Date started, stopped;
+	private volatile boolean timedOut;
+	private AtomicInteger total = new AtomicInteger(), rendered = new AtomicInteger(), skipped = new AtomicInteger(), failed = new AtomicInteger();
+	private List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+	public Date getStarted() {
+		return started;
+	}
+
+	public Date getStopped() {
+		return stopped;
+	}
+
+	public boolean isRunning() {
+		return started != null && stopped == null;
+	}
+
+	// the amount of pages (urls times languages) we want to warm up
+	public int getTotal() {
+		return total.get();
+	}
+
+	public int getRendered() {
+		return rendered.get();
+	}
+
+	// pages that were already cached or that we did not get to within the time budget
+	public int getSkipped() {
+		return skipped.get();
+	}
+
+	public int getFailed() {
+		return failed.get();
+	}
+
+	public int getRemaining() {
+		return Math.max(0, getTotal() - getRendered() - getSkipped() - getFailed());
+	}
+
+	// whether we ran out of time before all the pages were warmed up
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	// rendered pages per second
+	public double getThroughput() {
+		if (started == null) {
+			return 0;
+		}
+		long duration = (stopped == null ? new Date() : stopped).getTime() - started.getTime();
+		return duration <= 0 ? 0 : getRendered() * 1000.0 / duration;
+	}
+
+	public List<String> getFailures() {
+		synchronized(failures) {
+			return new ArrayList<String>(failures);
+		}
+	}
+
+	void start(int total) {
+		this.total.set(total);
+		this.stopped = null;
+		this.started = new Date();
+	}
+
+	void stop(boolean timedOut) {
+		this.timedOut = timedOut;
+		this.stopped = new Date();
+	}
+
+	// a crawl discovers the pages as it goes
+	void discovered() {
+		total.incrementAndGet();
+	}
+
+	void rendered() {
+		rendered.incrementAndGet();
+	}
+
+	void skipped() {
+		skipped.incrementAndGet();
+	}
+
+	void failed(String path, Throwable cause) {
+		failed.incrementAndGet();
+		if (failures.size() < MAX_FAILURES) {
+			failures.add(path + ": " + (cause == null ? null : cause.getMessage()));
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.NicelyResynchronizingAjaxController;
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.SilentCssErrorHandler;
+import com.gargoylesoftware.htmlunit.StorageHolder;
+import com.gargoylesoftware.htmlunit.TopLevelWindow;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebWindow;
+
+/**
+ * Keeps a bounded set of initialized web clients around so a render does not have to bootstrap a new javascript engine and window each time.
+ * Clients are grouped by the options they were created with (browser language and css) and the device they render for, the connection is swapped for every render.
+ */
+public class WebClientPool {
+
+	private static Logger logger = LoggerFactory.getLogger(WebClientPool.class);
+
+	private Map<String, BlockingQueue<WebClient>> idle = new ConcurrentHashMap<String, BlockingQueue<WebClient>>();
+	private AtomicInteger size = new AtomicInteger();
+	private int minSize, maxSize;
+	// how long we wait for a client to become available when the pool is exhausted
+	private long timeout = 30000;
+	private volatile boolean closed;
+	private ScriptCache scriptCache;
+
+	public WebClientPool(int minSize, int maxSize) {
+		this.minSize = minSize;
+		this.maxSize = Math.max(1, maxSize);
+	}
+
+	public static WebClient newWebClient(String language, Boolean css, WebConnection connection, ScriptCache scriptCache) {
+		BrowserVersion browserVersion = BrowserVersion.BEST_SUPPORTED.clone();
+		if (!browserVersion.getUserAgent().contains("Nabu-Renderer")) {
+			browserVersion.setUserAgent(browserVersion.getUserAgent() + " Nabu-Renderer/1.0");
+		}
+		// the initial request will get the headers we want, but any requests that follow from that (e.g. to fetch javascript, css...) will use "default" header stuffs
+		if (language != null) {
+			browserVersion.setBrowserLanguage(language);
+		}
+		WebClient webClient = new WebClient(browserVersion, connection);
+		webClient.setCache(new ReportingCache());
+		if (scriptCache != null) {
+			webClient.getJavaScriptEngine().shutdown();
+			webClient.setJavaScriptEngine(new CachingJavaScriptEngine(webClient, scriptCache));
+		}
+		// "should" optimize the javascript code but doesn't...not really
+//		JavaScriptEngine sriptEngine = (JavaScriptEngine) webClient.getJavaScriptEngine();
+//		HtmlUnitContextFactory factory = sriptEngine.getContextFactory();
+//		Context context = factory.enterContext();
+//		context.setOptimizationLevel(9);
+		webClient.setAjaxController(new NicelyResynchronizingAjaxController());
+		webClient.setCssErrorHandler(new SilentCssErrorHandler());
+		webClient.getOptions().setCssEnabled(css == null || css);
+		webClient.getOptions().setJavaScriptEnabled(true);
+		webClient.getOptions().setPopupBlockerEnabled(true);
+		webClient.getOptions().setTimeout(30000);
+		webClient.getOptions().setThrowExceptionOnFailingStatusCode(false);
+		webClient.getOptions().setThrowExceptionOnScriptError(true);
+		webClient.getOptions().setPrintContentOnFailingStatusCode(true);
+		webClient.getOptions().setDownloadImages(false);
+		return webClient;
+	}
+
+	/**
+	 * Fills up the pool for the given options to the minimum size
+	 */
+	public void prewarm(String language, String device, Boolean css, WebConnection connection) {
+		BlockingQueue<WebClient> queue = getQueue(language, device, css);
+		while (!closed && queue.size() < minSize && reserve()) {
+			queue.offer(newWebClient(language, css, connection, scriptCache));
+		}
+	}
+
+	/**
+	 * Takes a client from the pool, if none becomes available in time a {@link RejectedExecutionException} is thrown, like the scheduler does when it is at capacity
+	 */
+	public WebClient acquire(String language, String device, Boolean css, WebConnection connection) {
+		BlockingQueue<WebClient> queue = getQueue(language, device, css);
+		long deadline = System.currentTimeMillis() + timeout;
+		while (!closed) {
+			WebClient client = queue.poll();
+			if (client != null) {
+				client.setWebConnection(connection);
+				return client;
+			}
+			// we are allowed to create a new one
+			if (reserve()) {
+				return create(language, css, connection);
+			}
+			// if we are at capacity but there are idle clients with other options, we make room
+			if (evict(queue) && reserve()) {
+				return create(language, css, connection);
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				break;
+			}
+			try {
+				client = queue.poll(Math.min(remaining, 100), TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			if (client != null) {
+				client.setWebConnection(connection);
+				return client;
+			}
+		}
+		throw new RejectedExecutionException("No render client available");
+	}
+
+	public void release(String language, String device, Boolean css, WebClient client) {
+		release(language, device, css, client, false);
+	}
+	
+	/**
+	 * If we keep the page, the next render can reuse the loaded application, the cookies and storage are cleared regardless
+	 */
+	public void release(String language, String device, Boolean css, WebClient client, boolean keepPage) {
+		if (!closed) {
+			try {
+				if (keepPage) {
+					clearState(client);
+				}
+				else {
+					reset(client);
+				}
+				getQueue(language, device, css).offer(client);
+				return;
+			}
+			catch (Exception e) {
+				logger.warn("Could not reset render client, discarding it", e);
+			}
+		}
+		discard(client);
+	}
+
+	/**
+	 * Removes a client that is in an unknown state (e.g. after a failed render) from the pool
+	 */
+	public void discard(WebClient client) {
+		size.decrementAndGet();
+		try {
+			client.close();
+		}
+		catch (Exception e) {
+			logger.warn("Could not close render client", e);
+		}
+	}
+
+	public void close() {
+		closed = true;
+		for (BlockingQueue<WebClient> queue : idle.values()) {
+			WebClient client;
+			while ((client = queue.poll()) != null) {
+				discard(client);
+			}
+		}
+	}
+
+	private void reset(WebClient client) {
+		clearState(client);
+		// closing the windows also stops any background javascript that is still running, when the last one is closed, a new blank one is opened
+		for (TopLevelWindow window : new ArrayList<TopLevelWindow>(client.getTopLevelWindows())) {
+			window.close();
+		}
+	}
+
+	private void clearState(WebClient client) {
+		client.getCookieManager().clearCookies();
+		// local storage is kept per host for as long as the client lives, so it would carry state from one render to the next
+		for (WebWindow window : new ArrayList<WebWindow>(client.getWebWindows())) {
+			Page page = window.getEnclosedPage();
+			if (page != null) {
+				client.getStorageHolder().getStore(StorageHolder.Type.LOCAL_STORAGE, page).clear();
+				client.getStorageHolder().getStore(StorageHolder.Type.SESSION_STORAGE, page).clear();
+			}
+		}
+	}
+
+	private WebClient create(String language, Boolean css, WebConnection connection) {
+		try {
+			return newWebClient(language, css, connection, scriptCache);
+		}
+		catch (RuntimeException e) {
+			size.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private boolean reserve() {
+		while (true) {
+			int current = size.get();
+			if (current >= maxSize) {
+				return false;
+			}
+			else if (size.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private boolean evict(BlockingQueue<WebClient> except) {
+		for (BlockingQueue<WebClient> queue : idle.values()) {
+			if (queue != except) {
+				WebClient client = queue.poll();
+				if (client != null) {
+					discard(client);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private BlockingQueue<WebClient> getQueue(String language, String device, Boolean css) {
+		String key = (language == null ? "" : language) + ":" + (device == null ? "" : device) + ":" + (css == null || css);
+		BlockingQueue<WebClient> queue = idle.get(key);
+		if (queue == null) {
+			synchronized(idle) {
+				queue = idle.get(key);
+				if (queue == null) {
+					queue = new LinkedBlockingQueue<WebClient>();
+					idle.put(key, queue);
+				}
+			}
+		}
+		return queue;
+	}
+
+	public int getSize() {
+		return size.get();
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public ScriptCache getScriptCache() {
+		return scriptCache;
+	}
+
+	public void setScriptCache(ScriptCache scriptCache) {
+		this.scriptCache = scriptCache;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+}
@@ -17,16 +17,31 @@
 
 package be.nabu.eai.module.http.server.renderer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.nabu.eai.module.http.server.renderer.StaticResourceCache.StaticResource;
 import be.nabu.libs.authentication.api.Token;
 import be.nabu.libs.events.api.EventDispatcher;
 import be.nabu.libs.events.api.ResponseHandler;
@@ -48,6 +63,7 @@ import be.nabu.utils.mime.impl.MimeUtils;
 import be.nabu.utils.mime.impl.PlainMimeContentPart;
 import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
 
+import com.gargoylesoftware.htmlunit.HttpMethod;
 import com.gargoylesoftware.htmlunit.WebConnection;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
@@ -56,6 +72,9 @@ import com.gargoylesoftware.htmlunit.util.NameValuePair;
 
 public class WebConnectionImpl implements WebConnection {
 
+	private static Pattern SCRIPT = Pattern.compile("<script\\b[^>]*?\\bsrc\\s*=\\s*[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
+	private static Pattern LINK = Pattern.compile("<link\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+
 	private EventDispatcher dispatcher;
 	private Token token;
 	private Logger logger = LoggerFactory.getLogger(getClass());
@@ -64,6 +83,34 @@ public class WebConnectionImpl implements WebConnection {
 	private String javascriptToInject;
 	private boolean injected;
 	private boolean ssr;
+	// the amount of requests that are ongoing and when the last one started or stopped
+	private AtomicInteger pending = new AtomicInteger();
+	private volatile long lastActivity = System.currentTimeMillis();
+	// the url of the page we are rendering and the first response we got for it (before any redirects)
+	private String documentUrl;
+	private volatile WebResponse documentResponse;
+	// the time (in ms) spent fetching the document and the other resources
+	private volatile long documentTime = -1;
+	private AtomicLong internalTime = new AtomicLong(), externalTime = new AtomicLong();
+	// the wall clock time (in ms) during which at least one request was ongoing, requests that overlap are only counted once
+	private long fetchTime, fetchStarted;
+	private final Object fetchLock = new Object();
+	// only set if we are tracing the render
+	private RenderTrace trace;
+	private ResourceFilter filter;
+	private ExternalResourceCache externalCache;
+	private StaticResourceCache staticCache;
+	// the language we are rendering in
+	private String language;
+	// shared by all renders, the resources we are prefetching for this render are kept by url
+	private ExecutorService prefetcher;
+	private Map<String, Prefetch> prefetches = new ConcurrentHashMap<String, Prefetch>();
+	// how long (in ms) we wait for a prefetch that is already running, this matches the timeout of the web client
+	private long timeout = 30000;
+	// the cache of the web client that uses this connection
+	private ReportingCache clientCache;
+	private String documentHost;
+	private AtomicInteger blocked = new AtomicInteger(), externalRequests = new AtomicInteger();
 
 	public WebConnectionImpl(EventDispatcher dispatcher, Token token, HTTPClient client, ExceptionFormatter<HTTPRequest, HTTPResponse> formatter) {
 		this.dispatcher = dispatcher;
@@ -79,7 +126,205 @@ public class WebConnectionImpl implements WebConnection {
 
 	@Override
 	public WebResponse getResponse(WebRequest arg0) throws IOException {
-		logger.info("Requesting: " + arg0.getHttpMethod() + " " + arg0.getUrl());
+		synchronized(fetchLock) {
+			if (pending.getAndIncrement() == 0) {
+				fetchStarted = System.currentTimeMillis();
+			}
+		}
+		lastActivity = System.currentTimeMillis();
+		try {
+			// the document itself is never blocked
+			if (filter != null && !arg0.getUrl().toString().equals(documentUrl) && filter.isBlocked(arg0.getUrl(), documentHost)) {
+				return block(arg0);
+			}
+			WebResponse response = execute(arg0);
+			if (documentResponse == null && documentUrl != null && documentUrl.equals(arg0.getUrl().toString())) {
+				documentResponse = response;
+				prefetch(response);
+			}
+			return response;
+		}
+		finally {
+			lastActivity = System.currentTimeMillis();
+			synchronized(fetchLock) {
+				if (pending.decrementAndGet() == 0) {
+					fetchTime += lastActivity - fetchStarted;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Blocked resources get an empty response
+	 */
+	private WebResponse block(WebRequest arg0) {
+		logger.debug("Blocking: " + arg0.getHttpMethod() + " " + arg0.getUrl());
+		blocked.incrementAndGet();
+		if (trace != null) {
+			long now = System.currentTimeMillis();
+			trace.add(arg0.getUrl().toString(), arg0.getHttpMethod().name(), ResourceTrace.Origin.BLOCKED, 200, 0, now, now);
+		}
+		List<NameValuePair> headers = new ArrayList<NameValuePair>();
+		ResourceType type = ResourceType.fromPath(arg0.getUrl().getPath());
+		if (type == ResourceType.SCRIPT) {
+			headers.add(new NameValuePair("Content-Type", "application/javascript"));
+		}
+		else if (type == ResourceType.STYLESHEET) {
+			headers.add(new NameValuePair("Content-Type", "text/css"));
+		}
+		headers.add(new NameValuePair("Content-Length", "0"));
+		return new WebResponse(new WebResponseData(new byte[0], 200, "OK", headers), arg0, 0);
+	}
+	
+	/**
+	 * Starts fetching the scripts and stylesheets of the document in the background so they are ready by the time the parser asks for them
+	 */
+	private void prefetch(WebResponse document) {
+		if (prefetcher == null || document.getStatusCode() != 200 || document.getContentType() == null || !document.getContentType().equalsIgnoreCase("text/html")) {
+			return;
+		}
+		WebRequest referringRequest = document.getWebRequest();
+		for (String url : getPrefetchUrls(document.getContentAsString())) {
+			try {
+				URL resolved = new URL(referringRequest.getUrl(), url);
+				if (!resolved.getProtocol().equalsIgnoreCase("http") && !resolved.getProtocol().equalsIgnoreCase("https")) {
+					continue;
+				}
+				if (filter != null && filter.isBlocked(resolved, documentHost)) {
+					continue;
+				}
+				// the same headers htmlunit uses for the request
+				final WebRequest request = new WebRequest(resolved);
+				request.setAdditionalHeaders(new HashMap<String, String>(referringRequest.getAdditionalHeaders()));
+				request.setAdditionalHeader("Accept", "*/*");
+				request.setAdditionalHeader("Referer", referringRequest.getUrl().toString());
+				String key = resolved.toString();
+				// a pooled client might still have it from a previous render
+				if (clientCache != null && clientCache.peek(request) != null) {
+					continue;
+				}
+				if (!key.equals(documentUrl) && !prefetches.containsKey(key)) {
+					final Prefetch prefetch = new Prefetch();
+					prefetch.future = prefetcher.submit(new Callable<Fetched>() {
+						@Override
+						public Fetched call() throws Exception {
+							// the parser got there first and fetches it itself
+							if (!prefetch.started.compareAndSet(false, true)) {
+								return null;
+							}
+							return fetch(request);
+						}
+					});
+					prefetches.put(key, prefetch);
+				}
+			}
+			catch (MalformedURLException e) {
+				logger.debug("Not prefetching invalid url: " + url);
+			}
+			catch (RejectedExecutionException e) {
+				logger.debug("Prefetcher is saturated, the remaining resources are fetched when requested");
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Stops the prefetches that were never requested by the render
+	 */
+	public void cancelPrefetches() {
+		for (Prefetch prefetch : prefetches.values()) {
+			// running fetches are allowed to finish, interrupting them could leave a shared connection in a bad state
+			prefetch.future.cancel(false);
+		}
+		prefetches.clear();
+	}
+	
+	/**
+	 * The urls of the scripts and stylesheets (including preloads of either) in the given html
+	 */
+	static List<String> getPrefetchUrls(String html) {
+		List<String> urls = new ArrayList<String>();
+		Matcher matcher = SCRIPT.matcher(html);
+		while (matcher.find()) {
+			urls.add(unescape(matcher.group(1)));
+		}
+		matcher = LINK.matcher(html);
+		while (matcher.find()) {
+			String rel = getAttribute(matcher.group(), "rel");
+			String href = getAttribute(matcher.group(), "href");
+			if (rel == null || href == null) {
+				continue;
+			}
+			rel = rel.toLowerCase();
+			if (rel.contains("stylesheet") || rel.contains("modulepreload")) {
+				urls.add(unescape(href));
+			}
+			else if (rel.contains("preload")) {
+				String as = getAttribute(matcher.group(), "as");
+				// fonts, images... are not needed to render the page
+				if (as != null && (as.equalsIgnoreCase("script") || as.equalsIgnoreCase("style"))) {
+					urls.add(unescape(href));
+				}
+			}
+		}
+		return urls;
+	}
+	
+	private static String getAttribute(String tag, String name) {
+		Matcher matcher = Pattern.compile("\\b" + name + "\\s*=\\s*[\"']([^\"']*)[\"']", Pattern.CASE_INSENSITIVE).matcher(tag);
+		return matcher.find() ? matcher.group(1).trim() : null;
+	}
+	
+	private static String unescape(String url) {
+		return url.trim().replace("&amp;", "&");
+	}
+	
+	private WebResponse execute(WebRequest arg0) throws IOException {
+		Date date = new Date();
+		Fetched fetched = null;
+		// if the parser asks for something we are already fetching, we wait for that instead of fetching it again
+		Prefetch prefetch = prefetches.isEmpty() || !isSimple(arg0) ? null : prefetches.remove(arg0.getUrl().toString());
+		// if the prefetch has not started yet, it is queued behind other prefetches and we are better off fetching it ourselves
+		if (prefetch != null && prefetch.started.compareAndSet(false, true)) {
+			prefetch.future.cancel(false);
+		}
+		else if (prefetch != null) {
+			try {
+				fetched = prefetch.future.get(timeout, TimeUnit.MILLISECONDS);
+				logger.debug("Renderer prefetched [" + (new Date().getTime() - date.getTime()) + "ms] " + arg0.getUrl());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for: " + arg0.getUrl(), e);
+			}
+			catch (Exception e) {
+				logger.debug("Prefetch failed or timed out for " + arg0.getUrl() + ", fetching it again", e);
+			}
+		}
+		if (fetched == null) {
+			fetched = fetch(arg0);
+		}
+		return respond(arg0, fetched, date);
+	}
+	
+	private static boolean isSimple(WebRequest request) {
+		return request.getHttpMethod() == HttpMethod.GET && (request.getRequestBody() == null || request.getRequestBody().isEmpty());
+	}
+	
+	private Fetched fetch(WebRequest arg0) throws IOException {
+		logger.debug("Requesting: " + arg0.getHttpMethod() + " " + arg0.getUrl());
+		
+		Date date = new Date();
+		// static resources that were already served to another render skip the dispatcher entirely
+		// renders that bypass security (token) or are meant for the browser (ssr) can get different content, we don't share it
+		String staticKey = staticCache == null || token != null || ssr || arg0.getUrl().toString().equals(documentUrl) ? null : StaticResourceCache.getKey(arg0, language);
+		if (staticKey != null) {
+			StaticResource resource = staticCache.get(staticKey);
+			if (resource != null) {
+				logger.debug("Renderer static resource from cache: " + arg0.getUrl());
+				return new Fetched(resource.getCode(), resource.getMessage(), resource.getHeaders(), resource.getContent(), ResourceTrace.Origin.CACHE);
+			}
+		}
 		
 		String body = arg0.getRequestBody();
 		HTTPRequest request = new DefaultHTTPRequest(
@@ -125,7 +370,6 @@ public class WebConnectionImpl implements WebConnection {
 			request.getContent().setHeader(new SimpleAuthenticationHeader(token));
 		}
 		
-		Date date = new Date();
 		HTTPResponse response = dispatcher.fire(request, this, new ResponseHandler<HTTPRequest, HTTPResponse>() {
 			@Override
 			public HTTPResponse handle(HTTPRequest arg0, Object arg1, boolean arg2) {
@@ -151,13 +395,15 @@ public class WebConnectionImpl implements WebConnection {
 			}
 		});
 		
-		logger.info("Renderer request [" + (new Date().getTime() - date.getTime()) + "ms] " + arg0.getUrl());
+		logger.debug("Renderer request [" + (new Date().getTime() - date.getTime()) + "ms] " + arg0.getUrl());
 		
 		// if there is no response whatsoever (not even a 404), it was not aimed at this server, could be a cdn import or something like that
+		boolean external = response == null;
 		if (response == null) {
 			try {
-				response = client.execute(request, null, request.getTarget().startsWith("https://"), true);
-				logger.info("Renderer external request [" + (new Date().getTime() - date.getTime()) + "ms] " + arg0.getUrl());
+				boolean secure = request.getTarget().startsWith("https://");
+				response = externalCache == null ? client.execute(request, null, secure, true) : externalCache.execute(client, request, secure);
+				logger.debug("Renderer external request [" + (new Date().getTime() - date.getTime()) + "ms] " + arg0.getUrl());
 			}
 			catch (Exception e) {
 				throw new RuntimeException(e);
@@ -181,28 +427,14 @@ public class WebConnectionImpl implements WebConnection {
 				logger.debug("Altered response to " + request.hashCode());
 				response = alteredResponse;
 			}
-			logger.info("Renderer altered response [" + (new Date().getTime() - date.getTime()) + "ms] " + arg0.getUrl());
+			logger.debug("Renderer altered response [" + (new Date().getTime() - date.getTime()) + "ms] " + arg0.getUrl());
 		}
 		
 		if (response == null) {
 			throw new RuntimeException("No response found");
 		}
 		
-		byte [] content = null;
-		if (response.getContent() instanceof ContentPart) {
-			ReadableContainer<ByteBuffer> readable = ((ContentPart) response.getContent()).getReadable();
-			if (readable != null) {
-				content = IOUtils.toBytes(readable);
-			}
-		}
-		String contentType = MimeUtils.getContentType(response.getContent().getHeaders());
-		if (!injected && content != null && contentType.equals("application/javascript") && javascriptToInject != null) {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			baos.write((javascriptToInject + "\n\n").getBytes("UTF-8"));
-			baos.write(content);
-			content = baos.toByteArray();
-			injected = true;
-		}
+		byte [] content = toBytes(response);
 		
 		List<NameValuePair> responseHeaders = new ArrayList<NameValuePair>();
 		for (Header header : response.getContent().getHeaders()) {
@@ -211,12 +443,253 @@ public class WebConnectionImpl implements WebConnection {
 			}
 			responseHeaders.add(new NameValuePair(header.getName(), MimeUtils.getFullHeaderValue(header)));
 		}
-		WebResponseData data = new WebResponseData(content, response.getCode(), response.getMessage(), responseHeaders);
+		
+		// we keep the post processed content, before any injection
+		if (staticKey != null && !external && response.getCode() == 200 && isStatic(response)) {
+			staticCache.put(staticKey, response.getCode(), response.getMessage(), responseHeaders, content);
+		}
 		
 		logger.debug("Response for " + arg0.getHttpMethod() + " " + arg0.getUrl() + ": " + response.getCode() + " " + response.getMessage());
 		
-		logger.info("Renderer done [" + (new Date().getTime() - date.getTime()) + "ms] " + arg0.getUrl());
-		return new WebResponse(data, arg0, new Date().getTime() - date.getTime());
+		return new Fetched(response.getCode(), response.getMessage(), responseHeaders, content, external ? ResourceTrace.Origin.EXTERNAL : ResourceTrace.Origin.INTERNAL);
+	}
+	
+	/**
+	 * Reads the content of the response, if the length is known up front we read directly into an array of the correct size instead of growing a buffer and copying it
+	 */
+	static byte [] toBytes(HTTPResponse response) throws IOException {
+		if (!(response.getContent() instanceof ContentPart)) {
+			return null;
+		}
+		ReadableContainer<ByteBuffer> readable = ((ContentPart) response.getContent()).getReadable();
+		if (readable == null) {
+			return null;
+		}
+		Header [] headers = response.getContent().getHeaders();
+		Header lengthHeader = MimeUtils.getHeader("Content-Length", headers);
+		// if the content is still encoded, the length does not match what we read
+		if (lengthHeader == null || MimeUtils.getHeader("Content-Encoding", headers) != null) {
+			return IOUtils.toBytes(readable);
+		}
+		long length;
+		try {
+			length = Long.parseLong(lengthHeader.getValue().trim());
+		}
+		catch (NumberFormatException e) {
+			return IOUtils.toBytes(readable);
+		}
+		if (length < 0 || length > Integer.MAX_VALUE) {
+			return IOUtils.toBytes(readable);
+		}
+		byte [] bytes = new byte[(int) length];
+		ByteBuffer buffer = IOUtils.wrap(bytes, false);
+		int offset = 0;
+		long read;
+		while (offset < bytes.length && (read = readable.read(buffer)) > 0) {
+			offset += read;
+		}
+		// in case the length was not correct
+		byte [] remainder = IOUtils.toBytes(readable);
+		if (offset == bytes.length && remainder.length == 0) {
+			return bytes;
+		}
+		byte [] result = new byte[offset + remainder.length];
+		System.arraycopy(bytes, 0, result, 0, offset);
+		System.arraycopy(remainder, 0, result, offset, remainder.length);
+		return result;
+	}
+	
+	/**
+	 * Responses that depend on the user or ask not to be stored are never cached
+	 */
+	private boolean isStatic(HTTPResponse response) {
+		if (MimeUtils.getHeader("Set-Cookie", response.getContent().getHeaders()) != null) {
+			return false;
+		}
+		Header cacheControl = MimeUtils.getHeader("Cache-Control", response.getContent().getHeaders());
+		if (cacheControl != null) {
+			String value = MimeUtils.getFullHeaderValue(cacheControl).toLowerCase();
+			if (value.contains("no-store") || value.contains("private")) {
+				return false;
+			}
+		}
+		// we only key on the url and language, the encoding does not matter because we store the decoded content
+		Header vary = MimeUtils.getHeader("Vary", response.getContent().getHeaders());
+		if (vary != null) {
+			for (String part : MimeUtils.getFullHeaderValue(vary).split(",")) {
+				if (!part.trim().isEmpty() && !part.trim().equalsIgnoreCase("Accept-Encoding")) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	private WebResponse respond(WebRequest arg0, Fetched fetched, Date date) throws IOException {
+		int code = fetched.code;
+		String message = fetched.message;
+		List<NameValuePair> responseHeaders = fetched.headers;
+		byte [] content = fetched.content;
+		ResourceTrace.Origin origin = fetched.origin;
+		String contentType = null;
+		for (NameValuePair header : responseHeaders) {
+			if (header.getName().equalsIgnoreCase("Content-Type")) {
+				contentType = header.getValue();
+				break;
+			}
+		}
+		WebResponseData data;
+		// the injected javascript is served in front of the content instead of being copied into a new array with it
+		if (!injected && content != null && contentType != null && contentType.startsWith("application/javascript") && javascriptToInject != null) {
+			data = new WebResponseData(new PrefixedContent((javascriptToInject + "\n\n").getBytes("UTF-8"), content), code, message, responseHeaders);
+			injected = true;
+		}
+		// the array is wrapped as is, not copied
+		else {
+			data = new WebResponseData(content, code, message, responseHeaders);
+		}
+		
+		long duration = new Date().getTime() - date.getTime();
+		logger.debug("Renderer done [" + duration + "ms] " + arg0.getUrl());
+		if (documentTime < 0 && documentUrl != null && documentUrl.equals(arg0.getUrl().toString())) {
+			documentTime = duration;
+		}
+		else if (origin == ResourceTrace.Origin.EXTERNAL) {
+			externalTime.addAndGet(duration);
+			externalRequests.incrementAndGet();
+		}
+		else {
+			internalTime.addAndGet(duration);
+		}
+		if (trace != null) {
+			trace.add(arg0.getUrl().toString(), arg0.getHttpMethod().name(), origin, code, data.getContentLength(), date.getTime(), date.getTime() + duration);
+		}
+		return new WebResponse(data, arg0, duration);
+	}
+
+	/**
+	 * Called by the cache of the web client when it serves a response instead of asking us
+	 */
+	public void cached(WebRequest request, WebResponse response) {
+		if (trace != null) {
+			long now = System.currentTimeMillis();
+			trace.add(request.getUrl().toString(), request.getHttpMethod().name(), ResourceTrace.Origin.CACHE, response.getStatusCode(), response.getContentLength(), now, now);
+		}
+	}
+
+	public RenderTrace getTrace() {
+		return trace;
+	}
+
+	public void setTrace(RenderTrace trace) {
+		this.trace = trace;
+	}
+
+	public String getDocumentUrl() {
+		return documentUrl;
+	}
+
+	public void setDocumentUrl(String documentUrl) {
+		this.documentUrl = documentUrl;
+		this.documentHost = documentUrl == null ? null : URI.create(documentUrl).getHost();
+	}
+
+	public WebResponse getDocumentResponse() {
+		return documentResponse;
+	}
+
+	public long getDocumentTime() {
+		return Math.max(0, documentTime);
+	}
+
+	/**
+	 * Unlike the internal and external time, this is not a sum of durations, so it can be subtracted from the time the render took
+	 */
+	public long getFetchTime() {
+		synchronized(fetchLock) {
+			return fetchTime + (pending.get() > 0 ? System.currentTimeMillis() - fetchStarted : 0);
+		}
+	}
+	
+	public long getInternalTime() {
+		return internalTime.get();
+	}
+
+	public long getExternalTime() {
+		return externalTime.get();
+	}
+
+	public ExternalResourceCache getExternalCache() {
+		return externalCache;
+	}
+
+	public void setExternalCache(ExternalResourceCache externalCache) {
+		this.externalCache = externalCache;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public ReportingCache getClientCache() {
+		return clientCache;
+	}
+
+	public void setClientCache(ReportingCache clientCache) {
+		this.clientCache = clientCache;
+	}
+
+	public ExecutorService getPrefetcher() {
+		return prefetcher;
+	}
+
+	public void setPrefetcher(ExecutorService prefetcher) {
+		this.prefetcher = prefetcher;
+	}
+
+	public String getLanguage() {
+		return language;
+	}
+
+	public void setLanguage(String language) {
+		this.language = language;
+	}
+
+	public StaticResourceCache getStaticCache() {
+		return staticCache;
+	}
+
+	public void setStaticCache(StaticResourceCache staticCache) {
+		this.staticCache = staticCache;
+	}
+
+	public ResourceFilter getFilter() {
+		return filter;
+	}
+
+	public void setFilter(ResourceFilter filter) {
+		this.filter = filter;
+	}
+
+	// the amount of resources we blocked
+	public int getBlocked() {
+		return blocked.get();
+	}
+
+	public int getExternalRequests() {
+		return externalRequests.get();
+	}
+
+	public int getPending() {
+		return pending.get();
+	}
+
+	public long getLastActivity() {
+		return lastActivity;
 	}
 
 	public String getJavascriptToInject() {
@@ -234,4 +707,28 @@ public class WebConnectionImpl implements WebConnection {
 	public void setSsr(boolean ssr) {
 		this.ssr = ssr;
 	}
+
+	private static class Prefetch {
+		private AtomicBoolean started = new AtomicBoolean();
+		private Future<Fetched> future;
+	}
+	
+	/**
+	 * A response as we got it, before it is handed to htmlunit
+	 */
+	private static class Fetched {
+		private int code;
+		private String message;
+		private List<NameValuePair> headers;
+		private byte [] content;
+		private ResourceTrace.Origin origin;
+
+		private Fetched(int code, String message, List<NameValuePair> headers, byte [] content, ResourceTrace.Origin origin) {
+			this.code = code;
+			this.message = message;
+			this.headers = headers;
+			this.content = content;
+			this.origin = origin;
+		}
+	}
 }
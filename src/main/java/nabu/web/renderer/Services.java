@@ -18,7 +18,9 @@
 package nabu.web.renderer;
 
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Date;
+import java.util.List;
 
 import javax.jws.WebParam;
 import javax.jws.WebResult;
@@ -26,8 +28,14 @@ import javax.jws.WebService;
 import javax.validation.constraints.NotNull;
 
 import be.nabu.eai.module.http.client.HTTPClientArtifact;
+import be.nabu.eai.module.http.server.renderer.CacheRequest;
+import be.nabu.eai.module.http.server.renderer.RenderFailure;
+import be.nabu.eai.module.http.server.renderer.RenderJob;
+import be.nabu.eai.module.http.server.renderer.RenderTrace;
 import be.nabu.eai.module.http.server.renderer.Renderer;
 import be.nabu.eai.module.http.server.renderer.RendererArtifact;
+import be.nabu.eai.module.http.server.renderer.RendererMetrics;
+import be.nabu.eai.module.http.server.renderer.WarmupStatus;
 import be.nabu.eai.module.web.application.WebApplication;
 import be.nabu.libs.authentication.api.Token;
 import be.nabu.libs.http.api.HTTPResponse;
@@ -104,7 +112,43 @@ public class Services {
 		return response;
 	}
 	
-	public void cache(@NotNull @WebParam(name = "webApplicationId") String webApplicationId, @NotNull @WebParam(name = "rendererId") String rendererId, @NotNull @WebParam(name = "url") URI uri, @WebParam(name = "lastModified") Date lastModified) {
+	@WebResult(name = "job")
+	public RenderJob cacheAll(@NotNull @WebParam(name = "webApplicationId") String webApplicationId, @NotNull @WebParam(name = "rendererId") String rendererId, @WebParam(name = "requests") List<CacheRequest> requests, @WebParam(name = "concurrency") Integer concurrency, @WebParam(name = "async") Boolean async) throws InterruptedException {
+		WebApplication application = executionContext.getServiceContext().getResolver(WebApplication.class).resolve(webApplicationId);
+		RendererArtifact renderer = executionContext.getServiceContext().getResolver(RendererArtifact.class).resolve(rendererId);
+		// the renders happen on other threads so they don't build on this service context
+		RenderJob job = renderer.cache(application, requests, concurrency);
+		if (async == null || !async) {
+			job.await(Long.MAX_VALUE);
+		}
+		return job;
+	}
+	
+	@WebResult(name = "job")
+	public RenderJob job(@NotNull @WebParam(name = "rendererId") String rendererId, @NotNull @WebParam(name = "jobId") String jobId) {
+		RendererArtifact renderer = executionContext.getServiceContext().getResolver(RendererArtifact.class).resolve(rendererId);
+		return renderer.getJob(jobId);
+	}
+	
+	public void cache(@NotNull @WebParam(name = "webApplicationId") String webApplicationId, @NotNull @WebParam(name = "rendererId") String rendererId, @NotNull @WebParam(name = "url") URI uri, @WebParam(name = "language") String language, @WebParam(name = "lastModified") Date lastModified) {
+		WebApplication application = executionContext.getServiceContext().getResolver(WebApplication.class).resolve(webApplicationId);
+		RendererArtifact renderer = executionContext.getServiceContext().getResolver(RendererArtifact.class).resolve(rendererId);
+		ServiceRuntime runtime = ServiceRuntime.getRuntime();
+		try {
+			if (runtime != null) {
+				runtime.unregisterInThread();
+			}
+			renderer.cache(application, uri, language, lastModified);
+		}
+		finally {
+			if (runtime != null) {
+				runtime.registerInThread(false);
+			}
+		}
+	}
+	
+	@WebResult(name = "status")
+	public WarmupStatus crawl(@NotNull @WebParam(name = "webApplicationId") String webApplicationId, @NotNull @WebParam(name = "rendererId") String rendererId, @WebParam(name = "language") String language, @WebParam(name = "maxDepth") Integer maxDepth, @WebParam(name = "maxPages") Integer maxPages, @WebParam(name = "includes") List<String> includes, @WebParam(name = "excludes") List<String> excludes, @WebParam(name = "concurrency") Integer concurrency, @WebParam(name = "delay") Long delay) {
 		WebApplication application = executionContext.getServiceContext().getResolver(WebApplication.class).resolve(webApplicationId);
 		RendererArtifact renderer = executionContext.getServiceContext().getResolver(RendererArtifact.class).resolve(rendererId);
 		ServiceRuntime runtime = ServiceRuntime.getRuntime();
@@ -112,7 +156,7 @@ public class Services {
 			if (runtime != null) {
 				runtime.unregisterInThread();
 			}
-			renderer.cache(application, uri, lastModified);
+			return renderer.crawl(application, language, maxDepth, maxPages, includes, excludes, concurrency, delay);
 		}
 		finally {
 			if (runtime != null) {
@@ -120,4 +164,44 @@ public class Services {
 			}
 		}
 	}
+	
+	@WebResult(name = "trace")
+	public RenderTrace trace(@NotNull @WebParam(name = "webApplicationId") String webApplicationId, @NotNull @WebParam(name = "rendererId") String rendererId, @NotNull @WebParam(name = "url") URI url, @WebParam(name = "language") String language) throws URISyntaxException {
+		WebApplication application = executionContext.getServiceContext().getResolver(WebApplication.class).resolve(webApplicationId);
+		RendererArtifact renderer = executionContext.getServiceContext().getResolver(RendererArtifact.class).resolve(rendererId);
+		ServiceRuntime runtime = ServiceRuntime.getRuntime();
+		try {
+			if (runtime != null) {
+				runtime.unregisterInThread();
+			}
+			return renderer.trace(application, url, language);
+		}
+		finally {
+			if (runtime != null) {
+				runtime.registerInThread(false);
+			}
+		}
+	}
+	
+	@WebResult(name = "metrics")
+	public RendererMetrics metrics(@NotNull @WebParam(name = "webApplicationId") String webApplicationId, @NotNull @WebParam(name = "rendererId") String rendererId) {
+		WebApplication application = executionContext.getServiceContext().getResolver(WebApplication.class).resolve(webApplicationId);
+		RendererArtifact renderer = executionContext.getServiceContext().getResolver(RendererArtifact.class).resolve(rendererId);
+		return renderer.getMetrics(application);
+	}
+	
+	@WebResult(name = "status")
+	public WarmupStatus warmup(@NotNull @WebParam(name = "webApplicationId") String webApplicationId, @NotNull @WebParam(name = "rendererId") String rendererId) {
+		WebApplication application = executionContext.getServiceContext().getResolver(WebApplication.class).resolve(webApplicationId);
+		RendererArtifact renderer = executionContext.getServiceContext().getResolver(RendererArtifact.class).resolve(rendererId);
+		return renderer.getWarmupStatus(application);
+	}
+	
+	@WebResult(name = "failures")
+	public List<RenderFailure> failures(@NotNull @WebParam(name = "webApplicationId") String webApplicationId, @NotNull @WebParam(name = "rendererId") String rendererId) {
+		WebApplication application = executionContext.getServiceContext().getResolver(WebApplication.class).resolve(webApplicationId);
+		RendererArtifact renderer = executionContext.getServiceContext().getResolver(RendererArtifact.class).resolve(rendererId);
+		return renderer.getFailures(application);
+	}
+	
 }
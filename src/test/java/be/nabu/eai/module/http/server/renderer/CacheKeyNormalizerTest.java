@@ -0,0 +1,83 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CacheKeyNormalizerTest {
+
+	@Test
+	public void testTrackingParametersAreRemoved() throws URISyntaxException {
+		CacheKeyNormalizer normalizer = new CacheKeyNormalizer(Arrays.asList("ref", " ", null));
+		assertEquals("http://example.com/page?id=1", normalizer.normalize(new URI("http://example.com/page?utm_source=news&id=1&UTM_MEDIUM=mail&fbclid=abc&ref=home")));
+		assertEquals("http://example.com/page", normalizer.normalize(new URI("http://example.com/page?gclid=abc&_ga=1")));
+		// only whole names are matched
+		assertEquals("http://example.com/page?reference=1", normalizer.normalize(new URI("http://example.com/page?reference=1")));
+	}
+	
+	// the sort is on the name only and stable, repeated parameters keep their order
+	@Test
+	public void testParametersAreSortedStably() throws URISyntaxException {
+		CacheKeyNormalizer normalizer = new CacheKeyNormalizer(null);
+		assertEquals("http://example.com/?a=2&a=1&b=1&c", normalizer.normalize(new URI("http://example.com/?b=1&a=2&c&a=1")));
+		normalizer.setKeepQueryOrder(true);
+		assertEquals("http://example.com/?b=1&a=2&c&a=1", normalizer.normalize(new URI("http://example.com/?b=1&a=2&c&a=1")));
+	}
+	
+	@Test
+	public void testDefaultPortsAreRemoved() throws URISyntaxException {
+		CacheKeyNormalizer normalizer = new CacheKeyNormalizer(null);
+		assertEquals("http://example.com/", normalizer.normalize(new URI("http://example.com:80/")));
+		assertEquals("https://example.com/", normalizer.normalize(new URI("https://example.com:443/")));
+		assertEquals("https://example.com:80/", normalizer.normalize(new URI("https://example.com:80/")));
+		assertEquals("http://example.com:8080/", normalizer.normalize(new URI("http://example.com:8080/")));
+	}
+	
+	@Test
+	public void testHostsAreMappedToTheCanonicalHost() throws URISyntaxException {
+		CacheKeyNormalizer normalizer = new CacheKeyNormalizer(null);
+		normalizer.addAlias("WWW.Example.com", "example.com");
+		assertEquals("http://example.com/page", normalizer.normalize(new URI("HTTP://www.EXAMPLE.com/page")));
+		assertEquals("http://other.com/page", normalizer.normalize(new URI("http://Other.com/page")));
+		// the path is case sensitive
+		assertEquals("http://example.com/Page", normalizer.normalize(new URI("http://example.com/Page")));
+	}
+	
+	@Test
+	public void testTrailingSlashIsKeptByDefault() throws URISyntaxException {
+		CacheKeyNormalizer normalizer = new CacheKeyNormalizer(null);
+		assertEquals("http://example.com/a/", normalizer.normalize(new URI("http://example.com/a/")));
+		assertEquals("http://example.com/a", normalizer.normalize(new URI("http://example.com/a")));
+		normalizer.setRemoveTrailingSlash(true);
+		assertEquals("http://example.com/a", normalizer.normalize(new URI("http://example.com/a//")));
+		assertEquals("http://example.com/", normalizer.normalize(new URI("http://example.com/")));
+	}
+	
+	@Test
+	public void testFragmentAndEmptyPath() throws URISyntaxException {
+		CacheKeyNormalizer normalizer = new CacheKeyNormalizer(null);
+		assertEquals("http://example.com/", normalizer.normalize(new URI("http://example.com")));
+		assertEquals("http://example.com/page?a=1", normalizer.normalize(new URI("http://example.com/page?a=1#section")));
+	}
+}
@@ -0,0 +1,216 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.api.HTTPResponse;
+import be.nabu.libs.http.api.client.HTTPClient;
+import be.nabu.libs.http.core.DefaultHTTPRequest;
+import be.nabu.libs.http.core.DefaultHTTPResponse;
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.mime.api.ContentPart;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeHeader;
+import be.nabu.utils.mime.impl.MimeUtils;
+import be.nabu.utils.mime.impl.PlainMimeContentPart;
+import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
+
+public class ExternalResourceCacheTest {
+
+	private static final String URL = "https://cdn.example.com/library.js";
+	private static byte [] CONTENT = "var library = {};".getBytes(Charset.forName("UTF-8"));
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testIsStorable() {
+		assertTrue(ExternalResourceCache.isStorable(new MimeHeader("Cache-Control", "public, max-age=60")));
+		assertTrue(ExternalResourceCache.isStorable(new MimeHeader("ETag", "\"v1\"")));
+		assertTrue(ExternalResourceCache.isStorable(new MimeHeader("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT")));
+		assertTrue(ExternalResourceCache.isStorable(new MimeHeader("Expires", "Mon, 01 Jan 2024 00:00:00 GMT")));
+		// nothing to go on
+		assertFalse(ExternalResourceCache.isStorable(new MimeHeader("Content-Type", "application/javascript")));
+		assertFalse(ExternalResourceCache.isStorable(new MimeHeader("Cache-Control", "no-store"), new MimeHeader("ETag", "\"v1\"")));
+		assertFalse(ExternalResourceCache.isStorable(new MimeHeader("Cache-Control", "private, max-age=60")));
+	}
+	
+	// we key on the url only, so only the encoding may vary
+	@Test
+	public void testVary() {
+		assertTrue(ExternalResourceCache.isStorable(new MimeHeader("ETag", "\"v1\""), new MimeHeader("Vary", "Accept-Encoding")));
+		assertFalse(ExternalResourceCache.isStorable(new MimeHeader("ETag", "\"v1\""), new MimeHeader("Vary", "Cookie")));
+		assertFalse(ExternalResourceCache.isStorable(new MimeHeader("ETag", "\"v1\""), new MimeHeader("Vary", "accept-encoding, User-Agent")));
+		assertFalse(ExternalResourceCache.isStorable(new MimeHeader("ETag", "\"v1\""), new MimeHeader("Vary", "*")));
+	}
+	
+	@Test
+	public void testMaxAge() {
+		assertEquals(60000, ExternalResourceCache.getMaxAge(new Header [] { new MimeHeader("Cache-Control", "public, max-age=60") }, null));
+		assertEquals(120000, ExternalResourceCache.getMaxAge(new Header [] { new MimeHeader("Cache-Control", "s-maxage=120") }, null));
+		assertEquals(0, ExternalResourceCache.getMaxAge(new Header [] { new MimeHeader("Cache-Control", "no-cache, max-age=60") }, null));
+		assertEquals(0, ExternalResourceCache.getMaxAge(new Header [] { new MimeHeader("ETag", "\"v1\"") }, null));
+		long expires = ExternalResourceCache.getMaxAge(new Header [] { new MimeHeader("Expires", Renderer.formatDate(new Date(new Date().getTime() + 3600000))) }, null);
+		assertTrue(expires > 3500000 && expires <= 3600000);
+		assertEquals(0, ExternalResourceCache.getMaxAge(new Header [] { new MimeHeader("Expires", "invalid") }, null));
+		// a revalidation without freshness information keeps the original one
+		List<String []> original = new ArrayList<String []>();
+		original.add(new String [] { "Cache-Control", "max-age=30" });
+		assertEquals(30000, ExternalResourceCache.getMaxAge(new Header[0], original));
+		assertEquals(10000, ExternalResourceCache.getMaxAge(new Header [] { new MimeHeader("Cache-Control", "max-age=10") }, original));
+	}
+	
+	@Test
+	public void testFreshResourceIsNotFetchedAgain() throws Exception {
+		Server server = new Server(newResponse(200, new MimeHeader("Cache-Control", "max-age=60")));
+		ExternalResourceCache cache = server.newCache(null);
+		assertArrayEquals(CONTENT, read(cache.execute(null, newRequest(), true)));
+		assertArrayEquals(CONTENT, read(cache.execute(null, newRequest(), true)));
+		assertEquals(1, server.requests.size());
+		assertEquals(1, cache.getHits());
+	}
+	
+	@Test
+	public void testRevalidation() throws Exception {
+		Server server = new Server(
+			newResponse(200, new MimeHeader("Cache-Control", "no-cache"), new MimeHeader("ETag", "\"v1\"")),
+			newResponse(304, new MimeHeader("Cache-Control", "max-age=60")));
+		ExternalResourceCache cache = server.newCache(null);
+		cache.execute(null, newRequest(), true);
+		// the outdated resource is revalidated and the cached content is served
+		HTTPResponse response = cache.execute(null, newRequest(), true);
+		assertEquals(200, response.getCode());
+		assertArrayEquals(CONTENT, read(response));
+		assertEquals("\"v1\"", MimeUtils.getHeader("If-None-Match", server.requests.get(1).getContent().getHeaders()).getValue());
+		assertEquals(1, cache.getRevalidations());
+		// the revalidation made it fresh again
+		cache.execute(null, newRequest(), true);
+		assertEquals(2, server.requests.size());
+	}
+	
+	@Test
+	public void testVaryingResponseIsNotCached() throws Exception {
+		Server server = new Server(
+			newResponse(200, new MimeHeader("Cache-Control", "max-age=60"), new MimeHeader("Vary", "Cookie")),
+			newResponse(200, new MimeHeader("Cache-Control", "max-age=60"), new MimeHeader("Vary", "Cookie")));
+		ExternalResourceCache cache = server.newCache(null);
+		cache.execute(null, newRequest(), true);
+		cache.execute(null, newRequest(), true);
+		assertEquals(2, server.requests.size());
+	}
+	
+	// the disk format must be readable by a new cache, e.g. after a restart
+	@Test
+	public void testDiskSurvivesRestart() throws Exception {
+		File directory = folder.newFolder();
+		Server server = new Server(newResponse(200, new MimeHeader("Cache-Control", "max-age=60"), new MimeHeader("Content-Type", "application/javascript")));
+		server.newCache(directory).execute(null, newRequest(), true);
+		
+		Server restarted = new Server();
+		HTTPResponse response = restarted.newCache(directory).execute(null, newRequest(), true);
+		assertEquals(0, restarted.requests.size());
+		assertEquals(200, response.getCode());
+		assertEquals("application/javascript", MimeUtils.getHeader("Content-Type", response.getContent().getHeaders()).getValue());
+		assertArrayEquals(CONTENT, read(response));
+	}
+	
+	@Test
+	public void testDiskIsCapped() throws Exception {
+		File directory = folder.newFolder();
+		HTTPResponse [] responses = new HTTPResponse[10];
+		for (int i = 0; i < responses.length; i++) {
+			responses[i] = newResponse(200, new MimeHeader("Cache-Control", "max-age=60"));
+		}
+		// room for a few resources only
+		ExternalResourceCache cache = new Server(responses).newCache(directory, 300);
+		for (int i = 0; i < responses.length; i++) {
+			cache.execute(null, newRequest("https://cdn.example.com/library" + i + ".js"), true);
+		}
+		long size = 0;
+		for (File file : directory.listFiles()) {
+			size += file.length();
+		}
+		assertTrue(size <= 300);
+		assertTrue(directory.listFiles().length > 0);
+	}
+	
+	private static HTTPRequest newRequest() {
+		return newRequest(URL);
+	}
+	
+	private static HTTPRequest newRequest(String url) {
+		return new DefaultHTTPRequest("GET", url, new PlainMimeEmptyPart(null, new MimeHeader("Host", "cdn.example.com")));
+	}
+	
+	private static HTTPResponse newResponse(int code, Header...headers) {
+		if (code == 304) {
+			return new DefaultHTTPResponse((HTTPRequest) null, code, "Not Modified", new PlainMimeEmptyPart(null, headers));
+		}
+		List<Header> all = new ArrayList<Header>(Arrays.asList(headers));
+		all.add(new MimeHeader("Content-Length", Integer.toString(CONTENT.length)));
+		return new DefaultHTTPResponse((HTTPRequest) null, code, "OK", new PlainMimeContentPart(null, IOUtils.wrap(CONTENT, true), all.toArray(new Header[all.size()])));
+	}
+	
+	private static byte [] read(HTTPResponse response) throws IOException {
+		return IOUtils.toBytes(((ContentPart) response.getContent()).getReadable());
+	}
+	
+	// answers with the given responses in order and remembers the requests
+	private static class Server {
+		private List<HTTPResponse> responses;
+		private List<HTTPRequest> requests = new ArrayList<HTTPRequest>();
+		
+		public Server(HTTPResponse...responses) {
+			this.responses = new ArrayList<HTTPResponse>(Arrays.asList(responses));
+		}
+		
+		public ExternalResourceCache newCache(File directory) {
+			return newCache(directory, 1024 * 1024);
+		}
+		
+		public ExternalResourceCache newCache(File directory, long maxDiskSize) {
+			return new ExternalResourceCache(1024 * 1024, directory, maxDiskSize) {
+				@Override
+				HTTPResponse fetch(HTTPClient client, HTTPRequest request, boolean secure) throws Exception {
+					requests.add(request);
+					if (responses.isEmpty()) {
+						throw new IOException("Unexpected request: " + request.getTarget());
+					}
+					return responses.remove(0);
+				}
+			};
+		}
+	}
+}
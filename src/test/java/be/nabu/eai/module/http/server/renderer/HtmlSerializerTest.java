@@ -0,0 +1,93 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+public class HtmlSerializerTest {
+
+	@Test
+	public void testDoctype() throws IOException {
+		String html = serialize("<!DOCTYPE html><html><head><title>test</title></head><body></body></html>");
+		assertTrue(html, html.startsWith("<!DOCTYPE html>"));
+	}
+	
+	@Test
+	public void testEscaping() throws IOException {
+		String html = serialize("<html><body><p title='say \"hi\" &amp; <b>'>a &amp; b &lt;c&gt;&nbsp;d</p></body></html>");
+		assertTrue(html, html.contains("<p title=\"say &quot;hi&quot; &amp; <b>\">a &amp; b &lt;c&gt;&nbsp;d</p>"));
+	}
+	
+	@Test
+	public void testVoidElementsAreNotClosed() throws IOException {
+		String html = serialize("<html><body><br><img src=\"image.png\"><input type=\"text\"></body></html>");
+		assertTrue(html, html.contains("<br><img src=\"image.png\"><input type=\"text\">"));
+		assertFalse(html, html.contains("</br>"));
+		assertFalse(html, html.contains("</img>"));
+		assertFalse(html, html.contains("</input>"));
+	}
+	
+	// script and style contents are written as is, without escaping or CDATA wrapping
+	@Test
+	public void testRawTextElements() throws IOException {
+		String html = serialize("<html><head><style>a > b { content: \"&\"; }</style><script>if (1 < 2 && true) { var a = '<b>'; }</script></head><body></body></html>");
+		assertTrue(html, html.contains("<style>a > b { content: \"&\"; }</style>"));
+		assertTrue(html, html.contains("<script>if (1 < 2 && true) { var a = '<b>'; }</script>"));
+		assertFalse(html, html.contains("CDATA"));
+	}
+	
+	// the contents of a template live in a separate fragment, they should still be written
+	@Test
+	public void testTemplateContents() throws IOException {
+		String html = serialize("<html><body><template id=\"row\"><p>cell</p></template></body></html>");
+		assertTrue(html, html.contains("<template id=\"row\"><p>cell</p></template>"));
+	}
+	
+	@Test
+	public void testComments() throws IOException {
+		String html = serialize("<html><body><!-- a comment --><p>text</p></body></html>");
+		assertTrue(html, html.contains("<!-- a comment --><p>text</p>"));
+	}
+	
+	private static String serialize(String content) throws IOException {
+		WebClient client = new WebClient();
+		try {
+			// we only care about the dom as it is parsed
+			client.getOptions().setJavaScriptEnabled(false);
+			client.getOptions().setCssEnabled(false);
+			MockWebConnection connection = new MockWebConnection();
+			connection.setDefaultResponse(content);
+			client.setWebConnection(connection);
+			HtmlPage page = client.getPage("http://example.com/");
+			return new String(HtmlSerializer.serialize(page), Charset.forName("UTF-8"));
+		}
+		finally {
+			client.close();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import be.nabu.utils.io.IOUtils;
+
+public class PrefixedContentTest {
+
+	@Test
+	public void testPrefixIsServedBeforeContent() throws IOException {
+		byte [] prefix = "var injected = true;".getBytes(Charset.forName("UTF-8"));
+		byte [] content = "console.log(injected);".getBytes(Charset.forName("UTF-8"));
+		byte [] original = content.clone();
+		PrefixedContent prefixed = new PrefixedContent(prefix, content);
+		assertEquals(prefix.length + content.length, prefixed.length());
+		assertFalse(prefixed.isEmpty());
+		// htmlunit reads the content more than once
+		for (int i = 0; i < 2; i++) {
+			assertEquals("var injected = true;console.log(injected);", new String(read(prefixed), Charset.forName("UTF-8")));
+		}
+		// the content can be shared with the static resource cache, it must not change
+		assertArrayEquals(original, content);
+	}
+	
+	@Test
+	public void testEmpty() {
+		assertTrue(new PrefixedContent(new byte[0], new byte[0]).isEmpty());
+	}
+	
+	private static byte [] read(PrefixedContent content) throws IOException {
+		InputStream input = content.getInputStream();
+		try {
+			return IOUtils.toBytes(IOUtils.wrap(input));
+		}
+		finally {
+			input.close();
+		}
+	}
+}
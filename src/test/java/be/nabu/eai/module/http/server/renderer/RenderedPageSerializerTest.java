@@ -0,0 +1,81 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RenderedPageSerializerTest {
+
+	private static Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testRoundTrip() throws IOException {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("Content-Type", "text/html");
+		headers.put("Cache-Control", "max-age=60");
+		byte [] content = "<html><body>not found</body></html>".getBytes(UTF8);
+		RenderedPage page = new RenderedPage(404, headers, content);
+		
+		RenderedPageSerializer serializer = new RenderedPageSerializer();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		serializer.serialize(page, output);
+		RenderedPage result = serializer.deserialize(new ByteArrayInputStream(output.toByteArray()));
+		
+		assertEquals(404, result.getCode());
+		assertEquals(headers, result.getHeaders());
+		assertArrayEquals(content, result.getContent());
+		assertEquals(page.getHash(), result.getHash());
+		assertEquals(page.getCreated(), result.getCreated());
+	}
+	
+	@Test
+	public void testEmptyContent() throws IOException {
+		RenderedPageSerializer serializer = new RenderedPageSerializer();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		serializer.serialize(new RenderedPage(new byte[0]), output);
+		RenderedPage result = serializer.deserialize(new ByteArrayInputStream(output.toByteArray()));
+		assertEquals(0, result.getContent().length);
+		assertTrue(result.isEmpty());
+	}
+	
+	// caches filled by the ByteSerializer contain the raw html
+	@Test
+	public void testLegacyContent() throws IOException {
+		byte [] content = "<html><body>legacy</body></html>".getBytes(UTF8);
+		RenderedPage result = new RenderedPageSerializer().deserialize(new ByteArrayInputStream(content));
+		assertEquals(200, result.getCode());
+		assertArrayEquals(content, result.getContent());
+	}
+	
+	@Test
+	public void testNothingStored() throws IOException {
+		assertNull(new RenderedPageSerializer().deserialize(new ByteArrayInputStream(new byte[0])));
+	}
+}
@@ -0,0 +1,172 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.api.HTTPResponse;
+import be.nabu.libs.http.core.DefaultHTTPRequest;
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.mime.api.ContentPart;
+import be.nabu.utils.mime.impl.MimeHeader;
+import be.nabu.utils.mime.impl.MimeUtils;
+import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+
+public class RendererTest {
+
+	// a bot revalidating its copy must still get a full render, not a render built from 304 responses
+	@Test
+	public void testConditionalRequestIsRenderedInFull() throws MalformedURLException {
+		HTTPRequest request = new DefaultHTTPRequest("GET", "/page", new PlainMimeEmptyPart(null,
+			new MimeHeader("Host", "example.com"),
+			new MimeHeader("Accept-Language", "nl"),
+			new MimeHeader("If-None-Match", "\"abc\""),
+			new MimeHeader("If-Modified-Since", "Mon, 01 Jan 2024 00:00:00 GMT"),
+			new MimeHeader("If-Match", "\"abc\""),
+			new MimeHeader("If-Range", "\"abc\""),
+			new MimeHeader("If-Unmodified-Since", "Mon, 01 Jan 2024 00:00:00 GMT"),
+			new MimeHeader("Range", "bytes=0-100")));
+		WebRequest webRequest = Renderer.newWebRequest(new URL("http://example.com/page"), request, null);
+		Map<String, String> headers = webRequest.getAdditionalHeaders();
+		assertEquals("example.com", headers.get("Host"));
+		assertEquals("nl", headers.get("Accept-Language"));
+		assertFalse(headers.containsKey("If-None-Match"));
+		assertFalse(headers.containsKey("If-Modified-Since"));
+		assertFalse(headers.containsKey("If-Match"));
+		assertFalse(headers.containsKey("If-Range"));
+		assertFalse(headers.containsKey("If-Unmodified-Since"));
+		assertFalse(headers.containsKey("Range"));
+	}
+	
+	// the server compresses based on the Content-Encoding header, handing it compressed bytes would compress them twice
+	@Test
+	public void testGzipResponseCarriesIdentityContent() throws IOException {
+		byte [] html = "<html><body>hello</body></html>".getBytes(Charset.forName("UTF-8"));
+		RenderedPage page = new RenderedPage(html);
+		// this is how it lives in the cache
+		page.getCompressed();
+		HTTPResponse response = Renderer.wrapIntoResponse(newRequest("gzip, deflate"), page, "Accept-Encoding");
+		assertEquals(200, response.getCode());
+		assertEquals("gzip", MimeUtils.getHeader("Content-Encoding", response.getContent().getHeaders()).getValue());
+		assertNull(MimeUtils.getHeader("Content-Length", response.getContent().getHeaders()));
+		assertArrayEquals(html, IOUtils.toBytes(((ContentPart) response.getContent()).getReadable()));
+		
+		HTTPResponse identity = Renderer.wrapIntoResponse(newRequest(null), page, "Accept-Encoding");
+		assertNull(MimeUtils.getHeader("Content-Encoding", identity.getContent().getHeaders()));
+		assertEquals(Integer.toString(html.length), MimeUtils.getHeader("Content-Length", identity.getContent().getHeaders()).getValue());
+		assertArrayEquals(html, IOUtils.toBytes(((ContentPart) identity.getContent()).getReadable()));
+	}
+	
+	@Test
+	public void testEncodingsHaveDifferentETags() {
+		RenderedPage page = new RenderedPage("<html></html>".getBytes(Charset.forName("UTF-8")));
+		String gzip = MimeUtils.getHeader("ETag", Renderer.wrapIntoResponse(newRequest("gzip"), page, "Accept-Encoding").getContent().getHeaders()).getValue();
+		String identity = MimeUtils.getHeader("ETag", Renderer.wrapIntoResponse(newRequest(null), page, "Accept-Encoding").getContent().getHeaders()).getValue();
+		assertNotEquals(gzip, identity);
+		
+		HTTPRequest revalidate = new DefaultHTTPRequest("GET", "/page", new PlainMimeEmptyPart(null,
+			new MimeHeader("Accept-Encoding", "gzip"),
+			new MimeHeader("If-None-Match", gzip)));
+		assertEquals(304, Renderer.wrapIntoResponse(revalidate, page, "Accept-Encoding").getCode());
+		// the identity etag does not validate the compressed representation
+		revalidate = new DefaultHTTPRequest("GET", "/page", new PlainMimeEmptyPart(null,
+			new MimeHeader("Accept-Encoding", "gzip"),
+			new MimeHeader("If-None-Match", identity)));
+		assertEquals(200, Renderer.wrapIntoResponse(revalidate, page, "Accept-Encoding").getCode());
+	}
+	
+	// a page cached without a language (e.g. on publish) must be the one a crawler without a language gets
+	@Test
+	public void testCachedPageIsFoundByBot() throws URISyntaxException {
+		Renderer renderer = new Renderer(null, null, null) {
+			@Override
+			List<String> getSupportedLanguages() {
+				return Arrays.asList("en", "nl");
+			}
+		};
+		String cached = renderer.getCacheKey(new URI("http://example.com/page"), null);
+		HTTPRequest bot = new DefaultHTTPRequest("GET", "/page", new PlainMimeEmptyPart(null,
+			new MimeHeader("Host", "example.com"),
+			new MimeHeader("User-Agent", "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)")));
+		assertEquals(cached, renderer.getCacheKey(bot));
+		assertEquals("en", Renderer.getVariant(cached).get("language"));
+		
+		// a cached language is mapped the same way as the one the bot asks for
+		cached = renderer.getCacheKey(new URI("http://example.com/page"), "nl-BE");
+		bot = new DefaultHTTPRequest("GET", "/page", new PlainMimeEmptyPart(null,
+			new MimeHeader("Host", "example.com"),
+			new MimeHeader("Accept-Language", "nl")));
+		assertEquals(cached, renderer.getCacheKey(bot));
+	}
+	
+	// shared caches must not hand the page of one language or device to another
+	@Test
+	public void testVaryCoversTheVariants() {
+		Renderer renderer = new Renderer(null, null, null);
+		RenderedPage page = new RenderedPage("<html></html>".getBytes(Charset.forName("UTF-8")));
+		String vary = MimeUtils.getHeader("Vary", Renderer.wrapIntoResponse(newRequest(null), page, renderer.getVary()).getContent().getHeaders()).getValue();
+		assertEquals("Accept-Encoding, Accept-Language, Cookie", vary);
+		renderer.addDevice("mobile", "Mobile");
+		vary = MimeUtils.getHeader("Vary", Renderer.wrapIntoResponse(newRequest(null), page, renderer.getVary()).getContent().getHeaders()).getValue();
+		assertEquals("Accept-Encoding, Accept-Language, Cookie, User-Agent", vary);
+	}
+	
+	// without a list of supported languages, a client should not be able to create a new variant with every request
+	@Test
+	public void testLanguagesAreCappedWithoutSupportedLanguages() {
+		Renderer renderer = new Renderer(null, null, null) {
+			@Override
+			List<String> getSupportedLanguages() {
+				return null;
+			}
+		};
+		assertEquals("en", renderer.getLanguage(newLanguageRequest("en-US,en;q=0.9")));
+		assertEquals("en", renderer.getLanguage(newLanguageRequest("en-GB")));
+		assertEquals("nl", renderer.getLanguage(newLanguageRequest("language-x, nl-BE")));
+		assertNull(renderer.getLanguage(newLanguageRequest("1234567, *")));
+	}
+	
+	private static HTTPRequest newLanguageRequest(String acceptLanguage) {
+		return new DefaultHTTPRequest("GET", "/page", new PlainMimeEmptyPart(null, new MimeHeader("Host", "example.com"), new MimeHeader("Accept-Language", acceptLanguage)));
+	}
+	
+	private static HTTPRequest newRequest(String acceptEncoding) {
+		return acceptEncoding == null
+			? new DefaultHTTPRequest("GET", "/page", new PlainMimeEmptyPart(null, new MimeHeader("Host", "example.com")))
+			: new DefaultHTTPRequest("GET", "/page", new PlainMimeEmptyPart(null, new MimeHeader("Host", "example.com"), new MimeHeader("Accept-Encoding", acceptEncoding)));
+	}
+}
@@ -0,0 +1,48 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+public class SettleDetectorTest {
+
+	// a delayed data load fires long after the quiet period, the page is not done before it did
+	@Test
+	public void testWaitsForTimerLongerThanQuietPeriod() throws Exception {
+		WebClient client = new WebClient();
+		try {
+			MockWebConnection connection = new MockWebConnection();
+			connection.setDefaultResponse("<html><body><script>"
+				+ "setTimeout(function() { var div = document.createElement('div'); div.id = 'content'; document.body.appendChild(div); }, 1000);"
+				+ "</script></body></html>");
+			client.setWebConnection(connection);
+			HtmlPage page = client.getPage("http://example.com/");
+			new SettleDetector(200, 5000, null).settle(page, new WebConnectionImpl(null, null, null, null));
+			assertNotNull(page.getElementById("content"));
+		}
+		finally {
+			client.close();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class UserAgentClassifierTest {
+
+	@Test
+	public void testDefaultAgentsAreMatchedCaseInsensitively() {
+		UserAgentClassifier classifier = new UserAgentClassifier(null);
+		assertTrue(classifier.isBot("Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)"));
+		assertTrue(classifier.isBot("Mozilla/5.0 (compatible; bingbot/2.0; +http://www.bing.com/bingbot.htm)"));
+		assertTrue(classifier.isBot("facebookexternalhit/1.1 (+http://www.facebook.com/externalhit_uatext.php)"));
+		assertFalse(classifier.isBot("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36"));
+		assertFalse(classifier.isBot(null));
+	}
+	
+	// the default agents are literals, a dot in them is not a wildcard
+	@Test
+	public void testDefaultAgentsAreLiterals() {
+		UserAgentClassifier classifier = new UserAgentClassifier(null);
+		assertTrue(classifier.isBot("Mozilla/5.0 (compatible; +https://developers.google.com/+/web/snippet/)"));
+		assertFalse(classifier.isBot("Mozilla/5.0 developersXgoogleYcom"));
+	}
+	
+	// configured agents are regexes that have to match the whole user agent
+	@Test
+	public void testConfiguredAgentsMatchTheWholeUserAgent() {
+		UserAgentClassifier classifier = new UserAgentClassifier(Arrays.asList("Prerender-Check/[0-9.]+", " ", null));
+		assertTrue(classifier.isBot("Prerender-Check/1.2"));
+		assertFalse(classifier.isBot("Mozilla/5.0 Prerender-Check/1.2"));
+		// repeated calls give the same verdict, there is no state between them
+		assertTrue(classifier.isBot("Prerender-Check/1.2"));
+	}
+}
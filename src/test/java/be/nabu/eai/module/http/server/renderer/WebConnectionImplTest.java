@@ -0,0 +1,66 @@
+/*
+* Copyright (C) 2017 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.http.server.renderer;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.api.HTTPResponse;
+import be.nabu.libs.http.core.DefaultHTTPResponse;
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeHeader;
+import be.nabu.utils.mime.impl.PlainMimeContentPart;
+
+public class WebConnectionImplTest {
+
+	private static byte [] CONTENT = "console.log('hello world');".getBytes(Charset.forName("UTF-8"));
+	
+	@Test
+	public void testKnownLength() throws IOException {
+		assertArrayEquals(CONTENT, WebConnectionImpl.toBytes(newResponse(new MimeHeader("Content-Length", Integer.toString(CONTENT.length)))));
+	}
+	
+	@Test
+	public void testUnknownLength() throws IOException {
+		assertArrayEquals(CONTENT, WebConnectionImpl.toBytes(newResponse()));
+	}
+	
+	// a wrong length must not truncate or pad the content
+	@Test
+	public void testIncorrectLength() throws IOException {
+		assertArrayEquals(CONTENT, WebConnectionImpl.toBytes(newResponse(new MimeHeader("Content-Length", Integer.toString(CONTENT.length - 5)))));
+		assertArrayEquals(CONTENT, WebConnectionImpl.toBytes(newResponse(new MimeHeader("Content-Length", Integer.toString(CONTENT.length + 5)))));
+		assertArrayEquals(CONTENT, WebConnectionImpl.toBytes(newResponse(new MimeHeader("Content-Length", "invalid"))));
+	}
+	
+	// the length of encoded content says nothing about what we read
+	@Test
+	public void testEncodedContent() throws IOException {
+		assertArrayEquals(CONTENT, WebConnectionImpl.toBytes(newResponse(new MimeHeader("Content-Length", "3"), new MimeHeader("Content-Encoding", "gzip"))));
+	}
+	
+	private static HTTPResponse newResponse(Header...headers) {
+		return new DefaultHTTPResponse((HTTPRequest) null, 200, "OK", new PlainMimeContentPart(null, IOUtils.wrap(CONTENT, true), headers));
+	}
+}